@@ -0,0 +1,53 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.commit.CommitService;
+import com.atlassian.bitbucket.commit.CommitsBetweenRequest;
+import com.atlassian.bitbucket.commit.NoSuchCommitException;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.util.PageUtils;
+
+/**
+ * Answers whether one commit is reachable from another with a single commit request, without walking the history.
+ */
+class CommitAncestry {
+
+    private final CommitService commitService;
+
+    CommitAncestry(CommitService commitService) {
+
+        this.commitService = commitService;
+    }
+
+    /**
+     * @return true if no commit is reachable from {@code commitId} that is not reachable from {@code descendantId},
+     * also when both are the same commit, false if either commit no longer exists
+     */
+    boolean isAncestor(Repository repository, String commitId, String descendantId) {
+
+        CommitsBetweenRequest request = new CommitsBetweenRequest.Builder(repository)
+                .include(commitId)
+                .exclude(descendantId)
+                .build();
+
+        try {
+            return commitService.getCommitsBetween(request, PageUtils.newRequest(0, 1)).getSize() == 0;
+        } catch (NoSuchCommitException ignored) {
+            return false;
+        }
+    }
+}
@@ -21,41 +21,69 @@ import com.atlassian.bitbucket.util.Page;
 import com.atlassian.bitbucket.util.PageRequest;
 import com.atlassian.bitbucket.util.PageUtils;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.*;
 import java.util.function.Function;
 
+/**
+ * Iterates over commits page by page. First page is small since in most cases only the first commit is needed, each
+ * following page is twice as large as the previous one up to the max page limit. Once the consumer has read more than
+ * half of the current page the next one is fetched in background. Consumers usually stop at the previous release
+ * commit within the first pages, so the next page is not fetched before the consumer shows it keeps reading.
+ */
 class CommitPageCrawler implements Iterator<Commit> {
 
-    private final static int PAGE_REQUEST_LIMIT = 5;
+    private final static int INITIAL_PAGE_REQUEST_LIMIT = 5;
 
     private final Function<PageRequest, Page<Commit>> pageProvider;
+    private final int maxPageRequestLimit;
+    private final Executor prefetchExecutor;
 
     private boolean hasReachedEnd;
+    private int consumedCount;
     private Page<Commit> currentPage;
     private Iterator<Commit> currentPageIterator;
+    private FutureTask<Page<Commit>> nextPage;
 
+    /**
+     * @param excludedCommitIds commits that bound the crawl, neither they nor their ancestors are returned
+     */
     public static CommitPageCrawler of(CommitService commitService,
                                        Repository repository,
-                                       RefChange from) {
+                                       RefChange from,
+                                       Collection<String> excludedCommitIds,
+                                       int maxPageRequestLimit,
+                                       Executor prefetchExecutor) {
 
-        Function<PageRequest, Page<Commit>> pageProvider = pageRequest -> {
-            CommitsBetweenRequest request = new CommitsBetweenRequest.Builder(repository)
-                    .include(from.getToHash())
-                    .build();
+        CommitsBetweenRequest.Builder requestBuilder = new CommitsBetweenRequest.Builder(repository)
+                .include(from.getToHash());
+
+        if (!excludedCommitIds.isEmpty()) {
+            requestBuilder.exclude(excludedCommitIds);
+        }
 
-            return commitService.getCommitsBetween(request, pageRequest);
-        };
+        CommitsBetweenRequest request = requestBuilder.build();
 
-        Page<Commit> currentPage = pageProvider.apply(PageUtils.newRequest(0, PAGE_REQUEST_LIMIT));
+        Function<PageRequest, Page<Commit>> pageProvider = pageRequest -> commitService.getCommitsBetween(request,
+                                                                                                         pageRequest);
 
-        return new CommitPageCrawler(pageProvider, currentPage);
+        int initialPageRequestLimit = Math.min(INITIAL_PAGE_REQUEST_LIMIT, maxPageRequestLimit);
+        Page<Commit> currentPage = pageProvider.apply(PageUtils.newRequest(0, initialPageRequestLimit));
+
+        return new CommitPageCrawler(pageProvider, maxPageRequestLimit, prefetchExecutor, currentPage);
     }
 
     private CommitPageCrawler(Function<PageRequest, Page<Commit>> pageProvider,
+                              int maxPageRequestLimit,
+                              Executor prefetchExecutor,
                               Page<Commit> currentPage) {
 
         this.pageProvider = pageProvider;
+        this.maxPageRequestLimit = maxPageRequestLimit;
+        this.prefetchExecutor = prefetchExecutor;
         hasReachedEnd = false;
+        consumedCount = 0;
         this.currentPage = currentPage;
         currentPageIterator = currentPage.getValues().iterator();
     }
@@ -79,7 +107,14 @@ class CommitPageCrawler implements Iterator<Commit> {
     @Override
     public Commit next() {
 
-        return currentPageIterator.next();
+        Commit commit = currentPageIterator.next();
+        consumedCount++;
+
+        if (nextPage == null && consumedCount * 2 > currentPage.getSize()) {
+            prefetchNextPage();
+        }
+
+        return commit;
     }
 
     @Override
@@ -94,14 +129,17 @@ class CommitPageCrawler implements Iterator<Commit> {
             return;
         }
 
-        PageRequest nextPageRequest = currentPage.getNextPageRequest();
+        if (nextPage == null) {
+            prefetchNextPage();
+        }
 
-        if (nextPageRequest == null) {
+        if (nextPage == null) {
             hasReachedEnd = true;
             return;
         }
 
-        currentPage = pageProvider.apply(currentPage.getNextPageRequest());
+        currentPage = awaitNextPage();
+        nextPage = null;
 
         if (currentPage.getSize() == 0) {
             hasReachedEnd = true;
@@ -109,5 +147,44 @@ class CommitPageCrawler implements Iterator<Commit> {
         }
 
         currentPageIterator = currentPage.getValues().iterator();
+        consumedCount = 0;
+    }
+
+    private void prefetchNextPage() {
+
+        PageRequest nextPageRequest = currentPage.getNextPageRequest();
+
+        if (nextPageRequest == null) {
+            return;
+        }
+
+        int limit = Math.min(currentPage.getLimit() * 2, maxPageRequestLimit);
+        PageRequest pageRequest = PageUtils.newRequest(nextPageRequest.getStart(), limit);
+        nextPage = new FutureTask<>(() -> pageProvider.apply(pageRequest));
+
+        try {
+            prefetchExecutor.execute(nextPage);
+        } catch (RejectedExecutionException ignored) {
+            // page will be fetched by the consumer
+        }
+    }
+
+    private Page<Commit> awaitNextPage() {
+
+        // if no background thread has picked up the fetch yet, run it on the consumer thread
+        nextPage.run();
+
+        try {
+            return nextPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching commits", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException("Failed to fetch commits", e.getCause());
+        }
     }
 }
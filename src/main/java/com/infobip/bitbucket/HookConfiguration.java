@@ -0,0 +1,139 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.setting.Settings;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.infobip.jira.*;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Hook settings of a repository parsed and compiled once. Configuration is reused by pushes until hook settings or
+ * repository name, which the default release commit pattern depends on, change.
+ */
+final class HookConfiguration {
+
+    private static final String JIRA_VERSION_PREFIX_SETTINGS_KEY = "jira-version-prefix";
+
+    private final String repositoryName;
+    private final Map<String, Object> settings;
+    private final ImmutableList<ProjectKey> projectKeys;
+    private final String jiraVersionPrefix;
+    private final CommitMessageVersionExtractor commitMessageVersionExtractor;
+    private final IssueKeyScanner issueKeyScanner;
+
+    @Nullable
+    private final Pattern releaseTagPattern;
+
+    /**
+     * @throws IllegalStateException    if project key setting is empty
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    static HookConfiguration of(Repository repository, Settings settings) {
+
+        String repositoryName = repository.getName();
+        List<ProjectKey> projectKeys = ProjectKeyValidator.parse(requireNonEmptySetting(settings,
+                                                                                        ProjectKeyValidator.SETTINGS_KEY));
+        CommitMessageVersionExtractor commitMessageVersionExtractor =
+                getNonEmptySetting(settings, VersionPatternValidator.SETTINGS_KEY)
+                        .map(versionPattern -> new CommitMessageVersionExtractor(repositoryName, versionPattern))
+                        .orElseGet(() -> new CommitMessageVersionExtractor(repositoryName));
+
+        return new HookConfiguration(repositoryName,
+                                     settings.asMap(),
+                                     projectKeys,
+                                     getNonEmptySetting(settings, JIRA_VERSION_PREFIX_SETTINGS_KEY).orElse(""),
+                                     commitMessageVersionExtractor,
+                                     getNonEmptySetting(settings, ReleaseTagPatternValidator.SETTINGS_KEY)
+                                             .map(Pattern::compile)
+                                             .orElse(null));
+    }
+
+    private HookConfiguration(String repositoryName,
+                              Map<String, Object> settings,
+                              List<ProjectKey> projectKeys,
+                              String jiraVersionPrefix,
+                              CommitMessageVersionExtractor commitMessageVersionExtractor,
+                              @Nullable Pattern releaseTagPattern) {
+
+        this.repositoryName = repositoryName;
+        this.settings = new HashMap<>(settings);
+        this.projectKeys = ImmutableList.copyOf(projectKeys);
+        this.jiraVersionPrefix = jiraVersionPrefix;
+        this.commitMessageVersionExtractor = commitMessageVersionExtractor;
+        this.issueKeyScanner = IssueKeyScanner.of(projectKeys);
+        this.releaseTagPattern = releaseTagPattern;
+    }
+
+    /**
+     * @return true if configuration was created from the current name of the repository and given settings
+     */
+    boolean isUpToDate(Repository repository, Settings settings) {
+
+        return repositoryName.equals(repository.getName()) && this.settings.equals(settings.asMap());
+    }
+
+    /**
+     * @return project keys, version is always generated in the first one
+     */
+    List<ProjectKey> getProjectKeys() {
+
+        return projectKeys;
+    }
+
+    String getJiraVersionPrefix() {
+
+        return jiraVersionPrefix;
+    }
+
+    CommitMessageVersionExtractor getCommitMessageVersionExtractor() {
+
+        return commitMessageVersionExtractor;
+    }
+
+    IssueKeyScanner getIssueKeyScanner() {
+
+        return issueKeyScanner;
+    }
+
+    Optional<Pattern> getReleaseTagPattern() {
+
+        return Optional.ofNullable(releaseTagPattern);
+    }
+
+    private static Optional<String> getNonEmptySetting(Settings settings, String key) {
+
+        String setting = Strings.emptyToNull(settings.getString(key));
+        return Optional.ofNullable(setting);
+    }
+
+    private static String requireNonEmptySetting(Settings settings, String key) {
+
+        String setting = settings.getString(key);
+
+        if (Strings.isNullOrEmpty(setting)) {
+            String message = String.format("%s hook setting is not set to a non empty value", key);
+            throw new IllegalStateException(message);
+        }
+
+        return setting;
+    }
+}
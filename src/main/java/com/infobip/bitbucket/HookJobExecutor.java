@@ -0,0 +1,523 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.sal.api.lifecycle.LifecycleAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs hook jobs on a bounded worker pool so that the hook callback thread returns immediately.
+ *
+ * Jobs submitted with the same key (for example repository id) are executed one at a time in submission order,
+ * jobs with different keys run concurrently. At most {@code queueCapacity} jobs can be pending at once, when that
+ * limit is reached {@link #submit(Object, Runnable)} blocks the submitter for up to {@code submitTimeout} and then
+ * rejects the job.
+ *
+ * Jobs submitted through {@link #submitDebounced(Object, Object, Object, BinaryOperator, Consumer)} wait for
+ * {@code debounceWindow} before they are queued, jobs with the same debounce key submitted in the meantime are merged
+ * into the waiting one. This collapses bursts of pushes to the same ref into a single job.
+ *
+ * Jobs forked by a running job with {@link #fork(Object, Runnable)} don't count against {@code queueCapacity}, so the
+ * number of outstanding jobs can exceed it by the jobs that the running ones have forked.
+ *
+ * A job that waited in the queue for longer than {@code queueWaitWarningThreshold} is logged as a warning together
+ * with queue depth and wait times, queue statistics are also logged on debug level whenever a job starts.
+ */
+public class HookJobExecutor implements LifecycleAware {
+
+    private static final Logger logger = LoggerFactory.getLogger(HookJobExecutor.class);
+
+    private static final int DEFAULT_WORKER_COUNT = Integer.getInteger("jira-version-generator.worker-count",
+                                                                       Runtime.getRuntime().availableProcessors());
+    private static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("jira-version-generator.queue-capacity",
+                                                                         1000);
+    private static final long DEFAULT_SUBMIT_TIMEOUT_MILLIS = Long.getLong("jira-version-generator.submit-timeout-millis",
+                                                                           5000);
+    private static final long DEFAULT_DEBOUNCE_WINDOW_MILLIS = Long.getLong(
+            "jira-version-generator.push-debounce-window-millis", 2000);
+    private static final Duration QUEUE_WAIT_WARNING_THRESHOLD = Duration.ofMillis(Long.getLong(
+            "jira-version-generator.queue-wait-warning-millis", 10000));
+
+    private final Executor workers;
+    private final Semaphore capacity;
+    private final Duration submitTimeout;
+    private final Duration debounceWindow;
+    private final DebounceScheduler debounceScheduler;
+    private final LongSupplier nanoTime;
+    private final Map<Object, DebouncedJob<?>> debouncedJobs;
+    private final Map<Object, Deque<Job>> serialQueues;
+    private final AtomicInteger queueDepth;
+    private final LongAdder startedJobCount;
+    private final LongAdder totalWaitNanos;
+    private final AtomicLong maxWaitNanos;
+
+    public HookJobExecutor() {
+
+        this(newWorkerPool(DEFAULT_WORKER_COUNT),
+             DEFAULT_QUEUE_CAPACITY,
+             Duration.ofMillis(DEFAULT_SUBMIT_TIMEOUT_MILLIS),
+             Duration.ofMillis(DEFAULT_DEBOUNCE_WINDOW_MILLIS));
+    }
+
+    public HookJobExecutor(Executor workers, int queueCapacity, Duration submitTimeout) {
+
+        this(workers, queueCapacity, submitTimeout, Duration.ZERO);
+    }
+
+    public HookJobExecutor(Executor workers, int queueCapacity, Duration submitTimeout, Duration debounceWindow) {
+
+        this(workers,
+             queueCapacity,
+             submitTimeout,
+             debounceWindow,
+             debounceWindow.isZero() || debounceWindow.isNegative() ? null : newDebounceScheduler(),
+             System::nanoTime);
+    }
+
+    /**
+     * @param debounceScheduler runs debounced jobs once their window passes, null if jobs are not debounced
+     * @param nanoTime          source of time jobs spend in the queue
+     */
+    HookJobExecutor(Executor workers,
+                    int queueCapacity,
+                    Duration submitTimeout,
+                    Duration debounceWindow,
+                    @Nullable DebounceScheduler debounceScheduler,
+                    LongSupplier nanoTime) {
+
+        this.workers = requireNonNull(workers);
+        this.capacity = new Semaphore(queueCapacity);
+        this.submitTimeout = requireNonNull(submitTimeout);
+        this.debounceWindow = requireNonNull(debounceWindow);
+        this.debounceScheduler = debounceScheduler;
+        this.nanoTime = requireNonNull(nanoTime);
+        this.debouncedJobs = new HashMap<>();
+        this.serialQueues = new HashMap<>();
+        this.queueDepth = new AtomicInteger();
+        this.startedJobCount = new LongAdder();
+        this.totalWaitNanos = new LongAdder();
+        this.maxWaitNanos = new AtomicLong();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue stayed full for longer than submit timeout or the executor
+     *                                    has been shut down
+     */
+    public void submit(Object key, Runnable job) {
+
+        acquireCapacity(key);
+        enqueue(key, new Job(job, nanoTime.getAsLong(), true));
+    }
+
+    /**
+     * Submits a job that starts after the debounce window. If a job with the same debounce key is still waiting,
+     * {@code value} is merged into its value with {@code merger} instead and no new job is submitted. The merged job
+     * is queued under {@code key} and, like {@link #submit(Object, Runnable)}, holds queue capacity from the moment
+     * it is first submitted. With an empty debounce window the job is submitted right away.
+     *
+     * @param merger combines the value of the waiting job with the newer value
+     * @throws RejectedExecutionException if the queue stayed full for longer than submit timeout or the executor
+     *                                    has been shut down
+     */
+    public <T> void submitDebounced(Object key,
+                                    Object debounceKey,
+                                    T value,
+                                    BinaryOperator<T> merger,
+                                    Consumer<T> job) {
+
+        if (debounceScheduler == null) {
+            submit(key, () -> job.accept(value));
+            return;
+        }
+
+        if (mergeIntoWaitingJob(debounceKey, value, merger)) {
+            return;
+        }
+
+        acquireCapacity(key);
+
+        synchronized (debouncedJobs) {
+            // another push could have started the window while this one waited for capacity
+            if (mergeIntoWaitingJob(debounceKey, value, merger)) {
+                capacity.release();
+                return;
+            }
+
+            debouncedJobs.put(debounceKey, new DebouncedJob<>(value, job));
+        }
+
+        try {
+            debounceScheduler.schedule(() -> enqueueDebounced(key, debounceKey), debounceWindow);
+        } catch (RejectedExecutionException e) {
+            synchronized (debouncedJobs) {
+                debouncedJobs.remove(debounceKey);
+            }
+
+            capacity.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Submits a job spawned by a running job. Doesn't wait for nor hold queue capacity since blocking a worker on a full
+     * queue could starve the jobs that would free it, forked jobs are bounded only by the jobs that fork them.
+     */
+    public void fork(Object key, Runnable job) {
+
+        enqueue(key, new Job(job, nanoTime.getAsLong(), false));
+    }
+
+    /**
+     * Runs a task on the worker pool outside of job ordering and queue capacity, for example to fetch data ahead of a
+     * running job. Callers must be prepared to run the task themselves if it doesn't start in time.
+     */
+    public void execute(Runnable task) {
+
+        workers.execute(task);
+    }
+
+    /**
+     * @return number of submitted jobs that haven't started yet
+     */
+    public int getQueueDepth() {
+
+        return queueDepth.get();
+    }
+
+    /**
+     * @return average time jobs spent in the queue before they started
+     */
+    public Duration getAverageWaitTime() {
+
+        long count = startedJobCount.sum();
+
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+
+        return Duration.ofNanos(totalWaitNanos.sum() / count);
+    }
+
+    /**
+     * @return longest time a job spent in the queue before it started
+     */
+    public Duration getMaxWaitTime() {
+
+        return Duration.ofNanos(maxWaitNanos.get());
+    }
+
+    @Override
+    public void onStart() {
+    }
+
+    @Override
+    public void onStop() {
+
+        if (debounceScheduler != null) {
+            debounceScheduler.shutdownNow();
+
+            synchronized (debouncedJobs) {
+                if (!debouncedJobs.isEmpty()) {
+                    logger.warn("Dropped {} debounced jira version generator jobs", debouncedJobs.size());
+                }
+
+                debouncedJobs.clear();
+            }
+        }
+
+        if (!(workers instanceof ExecutorService)) {
+            return;
+        }
+
+        ExecutorService executorService = (ExecutorService) workers;
+        executorService.shutdown();
+
+        try {
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Jira version generator jobs did not finish in time, {} jobs were still queued",
+                            queueDepth.get());
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Object key, Job job) {
+
+        queueDepth.incrementAndGet();
+        boolean isKeyIdle;
+
+        synchronized (serialQueues) {
+            Deque<Job> serialQueue = serialQueues.get(key);
+            isKeyIdle = serialQueue == null;
+
+            if (isKeyIdle) {
+                serialQueue = new ArrayDeque<>();
+                serialQueues.put(key, serialQueue);
+            }
+
+            serialQueue.add(job);
+        }
+
+        if (isKeyIdle) {
+            schedule(key);
+        }
+    }
+
+    private <T> boolean mergeIntoWaitingJob(Object debounceKey, T value, BinaryOperator<T> merger) {
+
+        synchronized (debouncedJobs) {
+            @SuppressWarnings("unchecked")
+            DebouncedJob<T> debouncedJob = (DebouncedJob<T>) debouncedJobs.get(debounceKey);
+
+            if (debouncedJob == null) {
+                return false;
+            }
+
+            debouncedJob.value = merger.apply(debouncedJob.value, value);
+            debouncedJob.mergedCount++;
+            return true;
+        }
+    }
+
+    private void enqueueDebounced(Object key, Object debounceKey) {
+
+        DebouncedJob<?> debouncedJob;
+
+        synchronized (debouncedJobs) {
+            debouncedJob = debouncedJobs.remove(debounceKey);
+        }
+
+        if (debouncedJob == null) {
+            return;
+        }
+
+        if (debouncedJob.mergedCount > 0) {
+            logger.debug("Merged {} debounced jobs for {}", debouncedJob.mergedCount + 1, debounceKey);
+        }
+
+        enqueue(key, new Job(debouncedJob::run, nanoTime.getAsLong(), true));
+    }
+
+    private void acquireCapacity(Object key) {
+
+        if (capacity.tryAcquire()) {
+            return;
+        }
+
+        logger.warn("Jira version generator queue is full ({} jobs queued), waiting up to {} to queue job for {}",
+                    queueDepth.get(), submitTimeout, key);
+
+        try {
+            if (capacity.tryAcquire(submitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        throw new RejectedExecutionException("Jira version generator queue is full, rejected job for " + key);
+    }
+
+    private void schedule(Object key) {
+
+        try {
+            workers.execute(() -> runNext(key));
+        } catch (RejectedExecutionException e) {
+            List<Job> droppedJobs;
+
+            synchronized (serialQueues) {
+                droppedJobs = new ArrayList<>(serialQueues.remove(key));
+            }
+
+            queueDepth.addAndGet(-droppedJobs.size());
+            droppedJobs.forEach(this::releaseCapacity);
+            logger.error("Dropped {} jira version generator jobs for {}", droppedJobs.size(), key, e);
+        }
+    }
+
+    private void runNext(Object key) {
+
+        Job job;
+
+        synchronized (serialQueues) {
+            job = serialQueues.get(key).peek();
+        }
+
+        try {
+            run(key, job);
+        } finally {
+            // also on errors, otherwise the failed job would stay at the head and block the key forever
+            boolean hasMoreJobs;
+
+            synchronized (serialQueues) {
+                Deque<Job> serialQueue = serialQueues.get(key);
+                serialQueue.poll();
+                hasMoreJobs = !serialQueue.isEmpty();
+
+                if (!hasMoreJobs) {
+                    serialQueues.remove(key);
+                }
+            }
+
+            if (hasMoreJobs) {
+                schedule(key);
+            }
+        }
+    }
+
+    private void run(Object key, Job job) {
+
+        long waitNanos = nanoTime.getAsLong() - job.submittedAtNanos;
+        queueDepth.decrementAndGet();
+        startedJobCount.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        if (waitNanos >= QUEUE_WAIT_WARNING_THRESHOLD.toNanos()) {
+            logger.warn("Starting job for {} after waiting {} ms, {} jobs queued, average wait {} ms, max wait {} ms",
+                        key,
+                        TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                        getQueueDepth(),
+                        getAverageWaitTime().toMillis(),
+                        getMaxWaitTime().toMillis());
+        } else {
+            logger.debug("Starting job for {} after waiting {} ms, {} jobs queued, average wait {} ms, max wait {} ms",
+                         key,
+                         TimeUnit.NANOSECONDS.toMillis(waitNanos),
+                         getQueueDepth(),
+                         getAverageWaitTime().toMillis(),
+                         getMaxWaitTime().toMillis());
+        }
+
+        try {
+            job.runnable.run();
+        } catch (RuntimeException e) {
+            logger.error("Job for {} failed", key, e);
+        } finally {
+            releaseCapacity(job);
+        }
+    }
+
+    private void releaseCapacity(Job job) {
+
+        if (job.holdsCapacity) {
+            capacity.release();
+        }
+    }
+
+    private static ExecutorService newWorkerPool(int workerCount) {
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workerCount,
+                                                             workerCount,
+                                                             60,
+                                                             TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>(),
+                                                             runnable -> {
+                                                                 Thread thread = new Thread(runnable,
+                                                                                            "jira-version-generator-" +
+                                                                                            threadCount.incrementAndGet());
+                                                                 thread.setDaemon(true);
+                                                                 return thread;
+                                                             });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static DebounceScheduler newDebounceScheduler() {
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "jira-version-generator-debounce");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return new DebounceScheduler() {
+
+            @Override
+            public void schedule(Runnable task, Duration delay) {
+
+                executor.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public void shutdownNow() {
+
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    interface DebounceScheduler {
+
+        /**
+         * @throws RejectedExecutionException if the scheduler has been shut down
+         */
+        void schedule(Runnable task, Duration delay);
+
+        /**
+         * Drops the tasks that haven't run yet.
+         */
+        void shutdownNow();
+    }
+
+    private static class DebouncedJob<T> {
+
+        private final Consumer<T> job;
+        private T value;
+        private int mergedCount;
+
+        private DebouncedJob(T value, Consumer<T> job) {
+
+            this.value = value;
+            this.job = job;
+        }
+
+        private void run() {
+
+            job.accept(value);
+        }
+    }
+
+    private static class Job {
+
+        private final Runnable runnable;
+        private final long submittedAtNanos;
+        private final boolean holdsCapacity;
+
+        private Job(Runnable runnable, long submittedAtNanos, boolean holdsCapacity) {
+
+            this.runnable = runnable;
+            this.submittedAtNanos = submittedAtNanos;
+            this.holdsCapacity = holdsCapacity;
+        }
+    }
+}
@@ -15,12 +15,16 @@
  */
 package com.infobip.bitbucket;
 
+import com.atlassian.bitbucket.auth.AuthenticationContext;
 import com.atlassian.bitbucket.commit.*;
 import com.atlassian.bitbucket.hook.repository.*;
-import com.atlassian.bitbucket.repository.RefChange;
+import com.atlassian.bitbucket.repository.*;
 import com.atlassian.bitbucket.scope.Scope;
 import com.atlassian.bitbucket.setting.*;
-import com.google.common.base.Strings;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.infobip.infrastructure.ClockFactory;
 import com.infobip.jira.*;
@@ -28,51 +32,174 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class JiraVersionGeneratorHook implements PostRepositoryHook, SettingsValidator {
 
     private static final Logger logger = LoggerFactory.getLogger(JiraVersionGeneratorHook.class);
 
+    private static final int MAX_COMMIT_PAGE_REQUEST_LIMIT = Integer.getInteger(
+            "jira-version-generator.max-commit-page-size", 1000);
+
     private final CommitService commitService;
-    private final JiraService jiraService;
+    private final ReleaseOutbox releaseOutbox;
+    private final HookJobExecutor hookJobExecutor;
+    private final ReleaseMarkerIndex releaseMarkerIndex;
+    private final ReleaseTagResolver releaseTagResolver;
+    private final CommitAncestry commitAncestry;
+    private final SecurityService securityService;
+    private final AuthenticationContext authenticationContext;
     private final ImmutableList<SettingsValidator> settingsValidators;
+    private final Cache<Integer, HookConfiguration> configurations;
 
-    public JiraVersionGeneratorHook(CommitService commitService, JiraService jiraService) {
+    public JiraVersionGeneratorHook(CommitService commitService,
+                                    RefService refService,
+                                    ReleaseOutbox releaseOutbox,
+                                    HookJobExecutor hookJobExecutor,
+                                    ReleaseMarkerIndex releaseMarkerIndex,
+                                    SecurityService securityService,
+                                    AuthenticationContext authenticationContext) {
 
         this.commitService = commitService;
-        this.jiraService = jiraService;
+        this.releaseOutbox = releaseOutbox;
+        this.hookJobExecutor = hookJobExecutor;
+        this.releaseMarkerIndex = releaseMarkerIndex;
+        this.releaseTagResolver = new ReleaseTagResolver(refService, commitService);
+        this.commitAncestry = new CommitAncestry(commitService);
+        this.securityService = securityService;
+        this.authenticationContext = authenticationContext;
 
-        settingsValidators = ImmutableList.of(new ProjectKeyValidator(), new VersionPatternValidator());
+        settingsValidators = ImmutableList.of(new ProjectKeyValidator(),
+                                              new VersionPatternValidator(),
+                                              new ReleaseTagPatternValidator());
+        configurations = CacheBuilder.newBuilder()
+                                     .maximumSize(1000)
+                                     .build();
     }
 
     @Override
     public void postUpdate(@Nonnull PostRepositoryHookContext context, @Nonnull RepositoryHookRequest request) {
 
-        Collection<RefChange> refChanges = request.getRefChanges();
+        List<RefChange> refChanges = new ArrayList<>(request.getRefChanges());
 
-        if (refChanges.size() != 1) {
+        if (refChanges.isEmpty()) {
             return;
         }
 
-        RefChange refChange = refChanges.iterator().next();
+        Repository repository = request.getRepository();
+        Settings settings = context.getSettings();
+        ApplicationUser user = authenticationContext.getCurrentUser();
 
         try {
-            postReceive(context, request, refChange);
-        } catch (NoSuchCommitException ignored) {
-            // branch was deleted
+            hookJobExecutor.submitDebounced(repository.getId(),
+                                            Arrays.asList(repository.getId(), user == null ? null : user.getId()),
+                                            new PendingPush(settings, refChanges),
+                                            PendingPush::merge,
+                                            push -> runAs(user, () -> postReceive(push.settings,
+                                                                                  repository,
+                                                                                  push.refChanges,
+                                                                                  user)));
+        } catch (RejectedExecutionException e) {
+            logger.error("Failed to queue JIRA version generation for repository " + repository.getName(), e);
+        }
+    }
+
+    private void runAs(@Nullable ApplicationUser user, Runnable runnable) {
+
+        if (user == null) {
+            runnable.run();
+            return;
+        }
+
+        securityService.impersonating(user, "Generating JIRA version").call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Most pushes don't release anything so the tip commit of each ref change is checked first, only ref changes
+     * whose tip is a release commit are crawled. Settings are parsed only when they change.
+     *
+     * Each ref change is a separate unit of work. Units are grouped by the version they release so that ref changes
+     * pointing to the same release commit (for example a branch and a tag) are processed once. Groups are then
+     * processed concurrently. Commit crawl of each ref change is bounded by the last release commit processed on that
+     * ref and, if release tag pattern is configured, by the commit of the latest release tag.
+     */
+    private void postReceive(Settings settings,
+                             Repository repository,
+                             Collection<RefChange> refChanges,
+                             @Nullable ApplicationUser user) {
+
+        try {
+            HookConfiguration configuration = getConfiguration(repository, settings);
+            CommitMessageVersionExtractor commitMessageVersionExtractor = configuration.getCommitMessageVersionExtractor();
+            List<RefChange> releaseRefChanges = new ArrayList<>();
+
+            for (RefChange refChange : refChanges) {
+                if (refChange.getType() == RefChangeType.DELETE) {
+                    releaseMarkerIndex.removeReleaseCommitId(repository, refChange.getRef().getId());
+                } else if (isReleaseCommit(repository, refChange.getToHash(), commitMessageVersionExtractor)) {
+                    releaseRefChanges.add(refChange);
+                }
+            }
+
+            if (releaseRefChanges.isEmpty()) {
+                return;
+            }
+
+            Map<String, Map<String, ReleaseUnit>> unitsByVersion = new LinkedHashMap<>();
+
+            for (RefChange refChange : releaseRefChanges) {
+                createJiraVersionGenerator(repository,
+                                           refChange,
+                                           commitMessageVersionExtractor,
+                                           configuration.getReleaseTagPattern(),
+                                           user)
+                        .ifPresent(generator -> generator.getReleaseVersionName()
+                                .ifPresent(versionName -> unitsByVersion
+                                        .computeIfAbsent(versionName, key -> new LinkedHashMap<>())
+                                        .computeIfAbsent(generator.getReleaseCommitId(),
+                                                         key -> new ReleaseUnit(generator))
+                                        .refChanges.add(refChange)));
+            }
+
+            unitsByVersion.forEach((versionName, units) -> hookJobExecutor.fork(
+                    Arrays.asList(repository.getId(), configuration.getProjectKeys(), versionName),
+                    () -> runAs(user, () -> units.values()
+                            .forEach(unit -> generate(repository, unit, configuration)))));
         } catch (RuntimeException e) {
             logger.error("Failed to generate jira JIRA version and link issues", e);
         }
     }
 
-    private void postReceive(RepositoryHookContext context, RepositoryHookRequest request, RefChange change) {
+    private void generate(Repository repository,
+                          ReleaseUnit unit,
+                          HookConfiguration configuration) {
 
-        JiraVersionGenerator jiraVersionGenerator = createJiraVersionGenerator(context, request, change);
+        try {
+            unit.generator.generate(configuration.getJiraVersionPrefix(),
+                                    configuration.getProjectKeys(),
+                                    configuration.getIssueKeyScanner());
+        } catch (NoSuchCommitException ignored) {
+            // branch was deleted
+            return;
+        } catch (RuntimeException e) {
+            logger.error("Failed to generate jira JIRA version and link issues", e);
+            return;
+        }
 
-        ProjectKey projectKey = new ProjectKey(requireNonEmptySetting(context, ProjectKeyValidator.SETTINGS_KEY));
-        String jiraVersionPrefix = getNonEmptySetting(context, "jira-version-prefix").orElse("");
-        jiraVersionGenerator.generate(jiraVersionPrefix, projectKey);
+        String releaseCommitId = unit.generator.getReleaseCommitId();
+        unit.refChanges.forEach(refChange -> releaseMarkerIndex.putReleaseCommitId(
+                repository,
+                refChange.getRef().getId(),
+                releaseCommitId,
+                markerCommitId -> commitAncestry.isAncestor(repository, releaseCommitId, markerCommitId)));
     }
 
     @Override
@@ -82,42 +209,144 @@ public class JiraVersionGeneratorHook implements PostRepositoryHook, SettingsVal
         settingsValidators.forEach(validator -> validator.validate(settings, validationErrors, scope));
     }
 
-    private Optional<String> getNonEmptySetting(RepositoryHookContext context, String key) {
-        String setting = Strings.emptyToNull(context.getSettings().getString(key));
-        return Optional.ofNullable(setting);
+    private boolean isReleaseCommit(Repository repository,
+                                    String commitId,
+                                    CommitMessageVersionExtractor commitMessageVersionExtractor) {
+
+        Commit commit;
+
+        try {
+            commit = commitService.getCommit(new CommitRequest.Builder(repository, commitId).build());
+        } catch (NoSuchCommitException ignored) {
+            // branch was deleted
+            return false;
+        }
+
+        return commitMessageVersionExtractor.extractVersionName(commit.getMessage()).isPresent();
     }
 
-    private String requireNonEmptySetting(RepositoryHookContext context, String key) {
-        String setting = context.getSettings().getString(key);
+    private HookConfiguration getConfiguration(Repository repository, Settings settings) {
+
+        HookConfiguration configuration = configurations.getIfPresent(repository.getId());
 
-        if (Strings.isNullOrEmpty(setting)) {
-            String message = String.format("%s hook setting is not set to a non empty value", key);
-            throw new IllegalStateException(message);
+        if (configuration == null || !configuration.isUpToDate(repository, settings)) {
+            configuration = HookConfiguration.of(repository, settings);
+            configurations.put(repository.getId(), configuration);
         }
 
-        return setting;
+        return configuration;
     }
 
-    private JiraVersionGenerator createJiraVersionGenerator(RepositoryHookContext context,
-                                                            RepositoryHookRequest request,
-                                                            RefChange refChange) {
+    private Optional<JiraVersionGenerator> createJiraVersionGenerator(Repository repository,
+                                                                      RefChange refChange,
+                                                                      CommitMessageVersionExtractor commitMessageVersionExtractor,
+                                                                      Optional<Pattern> releaseTagPattern,
+                                                                      @Nullable ApplicationUser user) {
+
+        Executor userExecutor = task -> hookJobExecutor.execute(() -> runAs(user, task));
+        Iterator<Commit> commitIterator;
+
+        List<String> excludedCommitIds = new ArrayList<>();
+        releaseMarkerIndex.getReleaseCommitId(repository, refChange.getRef().getId())
+                          .ifPresent(excludedCommitIds::add);
+        releaseTagPattern.flatMap(pattern -> releaseTagResolver.findPreviousReleaseCommitId(repository,
+                                                                                            pattern,
+                                                                                            refChange.getToHash()))
+                         .ifPresent(excludedCommitIds::add);
+
+        try {
+            commitIterator = CommitPageCrawler.of(commitService,
+                                                  repository,
+                                                  refChange,
+                                                  excludedCommitIds,
+                                                  MAX_COMMIT_PAGE_REQUEST_LIMIT,
+                                                  userExecutor);
+        } catch (NoSuchCommitException ignored) {
+            // branch was deleted
+            return Optional.empty();
+        }
 
-        Iterator<Commit> commitIterator = CommitPageCrawler.of(commitService, request.getRepository(),
-                                                               refChange);
+        if (!commitIterator.hasNext()) {
+            logger.warn("Release commit {} of {} in repository {} is excluded by previous release commits {}, " +
+                        "skipping it",
+                        refChange.getToHash(),
+                        refChange.getRef().getId(),
+                        repository.getName(),
+                        excludedCommitIds);
+            return Optional.empty();
+        }
 
         Commit releaseCommit = commitIterator.next();
 
-        String repositoryName = request.getRepository().getName();
+        return Optional.of(new JiraVersionGenerator(releaseOutbox,
+                                                    releaseCommit,
+                                                    commitIterator,
+                                                    commitMessageVersionExtractor,
+                                                    ClockFactory.getInstance(),
+                                                    userExecutor));
+    }
+
+    /**
+     * Ref changes of pushes by the same user to the same repository that are waiting for the debounce window. Every
+     * distinct state of a ref is kept in push order, not only the newest one, since an intermediate state can be a
+     * release commit that a later push (for example "prepare for next development iteration") has already moved past.
+     * Tip of each state is checked when the merged push is processed, so merging saves the crawl and the JIRA calls of
+     * repeated releases but not the tip lookup of each distinct state.
+     *
+     * A state pushed again moves to the end instead of being checked twice and at most
+     * {@link #MAX_PENDING_STATES_PER_REF} states of a ref are kept, the oldest are dropped during a longer push storm.
+     */
+    private static class PendingPush {
+
+        private static final int MAX_PENDING_STATES_PER_REF = 16;
+
+        private final Settings settings;
+        private final List<RefChange> refChanges;
 
-        CommitMessageVersionExtractor commitMessageVersionExtractor = getNonEmptySetting(context,
-                                                                                         VersionPatternValidator.SETTINGS_KEY)
-                .map(versionPattern -> new CommitMessageVersionExtractor(repositoryName, versionPattern))
-                .orElseGet(() -> new CommitMessageVersionExtractor(repositoryName));
+        private PendingPush(Settings settings, Collection<RefChange> refChanges) {
 
-        return new JiraVersionGenerator(jiraService,
-                                        releaseCommit,
-                                        commitIterator,
-                                        commitMessageVersionExtractor,
-                                        ClockFactory.getInstance());
+            this.settings = settings;
+            this.refChanges = new ArrayList<>();
+            refChanges.forEach(this::add);
+        }
+
+        private static PendingPush merge(PendingPush older, PendingPush newer) {
+
+            PendingPush merged = new PendingPush(newer.settings, older.refChanges);
+            newer.refChanges.forEach(merged::add);
+            return merged;
+        }
+
+        private void add(RefChange refChange) {
+
+            String refId = refChange.getRef().getId();
+            refChanges.removeIf(pending -> pending.getRef().getId().equals(refId)
+                                           && pending.getType() == refChange.getType()
+                                           && pending.getToHash().equals(refChange.getToHash()));
+            refChanges.add(refChange);
+
+            List<RefChange> refStates = refChanges.stream()
+                                                  .filter(pending -> pending.getRef().getId().equals(refId))
+                                                  .collect(Collectors.toList());
+
+            if (refStates.size() > MAX_PENDING_STATES_PER_REF) {
+                RefChange dropped = refStates.get(0);
+                logger.warn("Ref {} changed more than {} times within debounce window, state {} will not be checked " +
+                            "for a release commit", refId, MAX_PENDING_STATES_PER_REF, dropped.getToHash());
+                refChanges.remove(dropped);
+            }
+        }
+    }
+
+    private static class ReleaseUnit {
+
+        private final JiraVersionGenerator generator;
+        private final List<RefChange> refChanges;
+
+        private ReleaseUnit(JiraVersionGenerator generator) {
+
+            this.generator = generator;
+            this.refChanges = new ArrayList<>();
+        }
     }
 }
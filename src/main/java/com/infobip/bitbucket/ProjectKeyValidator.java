@@ -20,17 +20,35 @@ import com.atlassian.bitbucket.setting.*;
 import com.infobip.jira.ProjectKey;
 
 import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.regex.Pattern;
 
+/**
+ * Setting holds one or more JIRA project keys separated by commas or whitespace, for example "ABC, DEF".
+ */
 class ProjectKeyValidator implements SettingsValidator {
 
 	static final String SETTINGS_KEY = "jira-project-key";
 
+	private static final Pattern separatorPattern = Pattern.compile("[,\\s]+");
+
+	static List<ProjectKey> parse(String setting) {
+
+		Set<ProjectKey> projectKeys = new LinkedHashSet<>();
+
+		for (String value : separatorPattern.split(setting.trim())) {
+			projectKeys.add(new ProjectKey(value));
+		}
+
+		return new ArrayList<>(projectKeys);
+	}
+
 	@Override
 	public void validate(@Nonnull Settings settings,
 	                     @Nonnull SettingsValidationErrors settingsValidationErrors,
 	                     @Nonnull Scope scope) {
 		try {
-			new ProjectKey(settings.getString(SETTINGS_KEY, ""));
+			parse(settings.getString(SETTINGS_KEY, ""));
 		} catch (IllegalArgumentException e) {
 			settingsValidationErrors.addFieldError(SETTINGS_KEY, e.getMessage());
 		}
@@ -0,0 +1,125 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * Remembers the last release commit processed for each repository ref. The release commit is used as a lower bound
+ * of the commit crawl for the next release on the same ref.
+ *
+ * Markers are stored in plugin settings, one map of ref id to commit id per repository, so they survive restarts.
+ *
+ * Releases of different versions are processed concurrently and can finish out of order, so a marker only moves
+ * forward: an older release finishing last doesn't replace the marker of a newer one. A push that reads the marker
+ * before a concurrent release stores it crawls further back than needed but still stops at the previous release
+ * commit.
+ */
+public class ReleaseMarkerIndex {
+
+    private static final String SETTINGS_KEY_PREFIX = "com.infobip.jira-version-generator.release-markers.";
+
+    private final PluginSettingsFactory pluginSettingsFactory;
+    private final ConcurrentMap<Integer, Map<String, String>> releaseCommitIds;
+
+    public ReleaseMarkerIndex(PluginSettingsFactory pluginSettingsFactory) {
+
+        this.pluginSettingsFactory = pluginSettingsFactory;
+        this.releaseCommitIds = new ConcurrentHashMap<>();
+    }
+
+    Optional<String> getReleaseCommitId(Repository repository, String refId) {
+
+        return Optional.ofNullable(getReleaseCommitIds(repository).get(refId));
+    }
+
+    /**
+     * @param isOlderRelease tests whether the release commit is an ancestor of the given commit of the current marker,
+     *                       such release is older and the marker is kept
+     */
+    synchronized void putReleaseCommitId(Repository repository,
+                                         String refId,
+                                         String releaseCommitId,
+                                         Predicate<String> isOlderRelease) {
+
+        Map<String, String> updated = new HashMap<>(getReleaseCommitIds(repository));
+        String currentReleaseCommitId = updated.get(refId);
+
+        if (releaseCommitId.equals(currentReleaseCommitId)) {
+            return;
+        }
+
+        if (currentReleaseCommitId != null && isOlderRelease.test(currentReleaseCommitId)) {
+            return;
+        }
+
+        updated.put(refId, releaseCommitId);
+        store(repository, updated);
+    }
+
+    synchronized void removeReleaseCommitId(Repository repository, String refId) {
+
+        Map<String, String> updated = new HashMap<>(getReleaseCommitIds(repository));
+
+        if (updated.remove(refId) == null) {
+            return;
+        }
+
+        store(repository, updated);
+    }
+
+    private Map<String, String> getReleaseCommitIds(Repository repository) {
+
+        return releaseCommitIds.computeIfAbsent(repository.getId(), this::load);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> load(Integer repositoryId) {
+
+        Object stored = getPluginSettings().get(SETTINGS_KEY_PREFIX + repositoryId);
+
+        if (!(stored instanceof Map)) {
+            return Collections.emptyMap();
+        }
+
+        return Collections.unmodifiableMap(new HashMap<>((Map<String, String>) stored));
+    }
+
+    private void store(Repository repository, Map<String, String> updated) {
+
+        String key = SETTINGS_KEY_PREFIX + repository.getId();
+
+        if (updated.isEmpty()) {
+            getPluginSettings().remove(key);
+        } else {
+            getPluginSettings().put(key, updated);
+        }
+
+        releaseCommitIds.put(repository.getId(), Collections.unmodifiableMap(updated));
+    }
+
+    private PluginSettings getPluginSettings() {
+
+        return pluginSettingsFactory.createGlobalSettings();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.user.ApplicationUser;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.bitbucket.user.UserService;
+import com.atlassian.sal.api.lifecycle.LifecycleAware;
+import com.infobip.jira.ReleaseOutbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.*;
+
+/**
+ * Periodically runs JIRA release plans left pending by an outage or a restart. At most a fixed number of plans is run
+ * per interval so that a backlog is flushed at a steady rate, each plan is run as the user who pushed the release.
+ */
+public class ReleaseOutboxDrainer implements LifecycleAware {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReleaseOutboxDrainer.class);
+
+    private static final long DRAIN_INTERVAL_MILLIS = Long.getLong(
+            "jira-version-generator.outbox-drain-interval-millis", 60000);
+    private static final int DRAIN_BATCH_SIZE = Integer.getInteger(
+            "jira-version-generator.outbox-drain-batch-size", 10);
+
+    private final ReleaseOutbox releaseOutbox;
+    private final UserService userService;
+    private final SecurityService securityService;
+
+    private ScheduledExecutorService scheduler;
+
+    public ReleaseOutboxDrainer(ReleaseOutbox releaseOutbox,
+                                UserService userService,
+                                SecurityService securityService) {
+
+        this.releaseOutbox = releaseOutbox;
+        this.userService = userService;
+        this.securityService = securityService;
+    }
+
+    @Override
+    public synchronized void onStart() {
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jira-version-generator-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::drain,
+                                         DRAIN_INTERVAL_MILLIS,
+                                         DRAIN_INTERVAL_MILLIS,
+                                         TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void onStop() {
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    void drain() {
+
+        try {
+            int count = releaseOutbox.drain(DRAIN_BATCH_SIZE, this::runAs);
+
+            if (count > 0) {
+                logger.info("Ran {} pending JIRA release plans", count);
+            }
+        } catch (RuntimeException e) {
+            // keep the schedule, failed plans stay pending
+            logger.error("Failed to run pending JIRA release plans", e);
+        }
+    }
+
+    private void runAs(@Nullable Integer userId, Runnable runnable) {
+
+        ApplicationUser user = userId == null ? null : userService.getUserById(userId);
+
+        if (user == null) {
+            runnable.run();
+            return;
+        }
+
+        securityService.impersonating(user, "Generating JIRA version").call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.commit.CommitService;
+import com.atlassian.bitbucket.repository.*;
+import com.atlassian.bitbucket.util.Page;
+import com.atlassian.bitbucket.util.PageRequest;
+import com.atlassian.bitbucket.util.PageUtils;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the previous release from repository tags instead of scanning commit messages.
+ */
+class ReleaseTagResolver {
+
+    private static final int TAG_PAGE_REQUEST_LIMIT = 25;
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+    private static final String OPTIONAL_QUANTIFIERS = "?*{";
+
+    private final RefService refService;
+    private final CommitAncestry commitAncestry;
+
+    ReleaseTagResolver(RefService refService, CommitService commitService) {
+
+        this.refService = refService;
+        this.commitAncestry = new CommitAncestry(commitService);
+    }
+
+    /**
+     * Tags of other branches or of newer releases, for example one pushed while an older release was still waiting to
+     * be processed, are skipped: excluding their commit from the crawl would exclude the release commit itself.
+     *
+     * @param releaseHash hash the released ref points to, tags pointing to it belong to the current release and are
+     *                    ignored
+     * @return commit of the most recently modified tag whose name matches the pattern and whose commit is an ancestor
+     * of the release
+     */
+    Optional<String> findPreviousReleaseCommitId(Repository repository,
+                                                 Pattern releaseTagPattern,
+                                                 String releaseHash) {
+
+        RepositoryTagsRequest request = new RepositoryTagsRequest.Builder(repository)
+                .filterText(getLiteralPrefix(releaseTagPattern.pattern()))
+                .order(RefOrder.MODIFICATION)
+                .build();
+
+        PageRequest pageRequest = PageUtils.newRequest(0, TAG_PAGE_REQUEST_LIMIT);
+
+        while (pageRequest != null) {
+            Page<Tag> tags = refService.getTags(request, pageRequest);
+
+            for (Tag tag : tags.getValues()) {
+                boolean isCurrentRelease = releaseHash.equals(tag.getLatestCommit())
+                                           || releaseHash.equals(tag.getHash());
+
+                if (!isCurrentRelease
+                    && releaseTagPattern.matcher(tag.getDisplayId()).matches()
+                    && commitAncestry.isAncestor(repository, tag.getLatestCommit(), releaseHash)) {
+                    return Optional.of(tag.getLatestCommit());
+                }
+            }
+
+            pageRequest = tags.getIsLastPage() ? null : tags.getNextPageRequest();
+        }
+
+        return Optional.empty();
+    }
+
+    private String getLiteralPrefix(String pattern) {
+
+        int end = 0;
+
+        while (end < pattern.length() && REGEX_METACHARACTERS.indexOf(pattern.charAt(end)) < 0) {
+            end++;
+        }
+
+        if (end > 0 && end < pattern.length() && OPTIONAL_QUANTIFIERS.indexOf(pattern.charAt(end)) >= 0) {
+            // last literal character is optional
+            end--;
+        }
+
+        return pattern.substring(0, end);
+    }
+}
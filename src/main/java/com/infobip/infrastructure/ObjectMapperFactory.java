@@ -15,20 +15,71 @@
  */
 package com.infobip.infrastructure;
 
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 
+/**
+ * Modules are registered once on a shared mapper. The shared mapper is never exposed, it is used through immutable
+ * {@link ObjectReader} and {@link ObjectWriter} instances which reuse its serializer caches.
+ */
 public class ObjectMapperFactory {
 
+    private static final String[] BYTECODE_MODULE_CLASS_NAMES = {
+            "com.fasterxml.jackson.module.blackbird.BlackbirdModule",
+            "com.fasterxml.jackson.module.afterburner.AfterburnerModule"
+    };
+
+    private static final ObjectMapper OBJECT_MAPPER = create();
+
+    /**
+     * @return copy of the shared mapper that can be reconfigured by the caller
+     */
     public static ObjectMapper getInstance() {
+        return OBJECT_MAPPER.copy();
+    }
+
+    public static ObjectReader getReader() {
+        return OBJECT_MAPPER.reader();
+    }
+
+    public static ObjectWriter getWriter() {
+        return OBJECT_MAPPER.writer();
+    }
+
+    private static ObjectMapper create() {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new Jdk8Module());
         objectMapper.registerModule(new ParameterNamesModule());
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        registerBytecodeModule(objectMapper);
         return objectMapper;
     }
+
+    /**
+     * Blackbird (Java 11 and newer) or Afterburner generate accessors instead of using reflection. Neither is a
+     * dependency of the plugin, the first one found on the class path is registered.
+     */
+    private static void registerBytecodeModule(ObjectMapper objectMapper) {
+        boolean isJava8 = System.getProperty("java.specification.version", "").startsWith("1.");
+
+        for (String className : BYTECODE_MODULE_CLASS_NAMES) {
+            if (isJava8 && className.contains("blackbird")) {
+                continue;
+            }
+
+            try {
+                objectMapper.registerModule((Module) Class.forName(className).getDeclaredConstructor().newInstance());
+                return;
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+                // module is not available
+            }
+        }
+    }
 }
@@ -0,0 +1,164 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops requests to a JIRA instance that keeps failing. Breaker opens after a number of consecutive failed requests
+ * and rejects requests until the open duration passes. After that a single trial request is let through: if it
+ * succeeds the breaker closes, otherwise it opens again.
+ * <p>
+ * Every admitted request gets a {@link Permit} of the breaker's current generation, which changes whenever the breaker
+ * opens or closes. Outcomes of requests admitted in an earlier generation are ignored, so a slow request sent before
+ * the breaker opened can neither close it nor count as a failure of the trial request.
+ */
+class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    static final class Permit {
+
+        private final long generation;
+        private final boolean isTrial;
+
+        private Permit(long generation, boolean isTrial) {
+
+            this.generation = generation;
+            this.isTrial = isTrial;
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final LongSupplier nanoTime;
+
+    private State state;
+    private long generation;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean isTrialInProgress;
+
+    static CircuitBreaker fromSystemProperties(String name) {
+
+        return new CircuitBreaker(name,
+                                  Math.max(1, Integer.getInteger(
+                                          "jira-version-generator.circuit-breaker-failure-threshold", 5)),
+                                  Duration.ofMillis(Long.getLong("jira-version-generator.circuit-breaker-open-millis",
+                                                                 30000)),
+                                  System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int failureThreshold, Duration openDuration, LongSupplier nanoTime) {
+
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.nanoTime = nanoTime;
+        state = State.CLOSED;
+    }
+
+    /**
+     * @return permit if the request may be sent, in that case the caller must report its outcome with the permit
+     */
+    synchronized Optional<Permit> tryAcquire() {
+
+        if (state == State.CLOSED) {
+            return Optional.of(new Permit(generation, false));
+        }
+
+        if (isOpen()) {
+            return Optional.empty();
+        }
+
+        if (isTrialInProgress) {
+            return Optional.empty();
+        }
+
+        state = State.HALF_OPEN;
+        isTrialInProgress = true;
+        return Optional.of(new Permit(generation, true));
+    }
+
+    /**
+     * @return true if requests are being rejected, false if they are let through or a trial request may be sent
+     */
+    synchronized boolean isOpen() {
+
+        return state == State.OPEN && nanoTime.getAsLong() - openedAt < openDuration.toNanos();
+    }
+
+    synchronized State getState() {
+
+        return isOpen() ? State.OPEN : state == State.OPEN ? State.HALF_OPEN : state;
+    }
+
+    synchronized void onSuccess(Permit permit) {
+
+        if (permit.generation != generation) {
+            return;
+        }
+
+        if (permit.isTrial) {
+            logger.info("JIRA {} is responding again, closing circuit breaker", name);
+            state = State.CLOSED;
+            generation++;
+            isTrialInProgress = false;
+        }
+
+        consecutiveFailures = 0;
+    }
+
+    synchronized void onFailure(Permit permit) {
+
+        if (permit.generation != generation) {
+            return;
+        }
+
+        consecutiveFailures++;
+
+        if (permit.isTrial || consecutiveFailures >= failureThreshold) {
+            logger.warn("JIRA {} failed {} consecutive requests, rejecting requests for {} ms",
+                        name,
+                        consecutiveFailures,
+                        openDuration.toMillis());
+            state = State.OPEN;
+            generation++;
+            openedAt = nanoTime.getAsLong();
+            isTrialInProgress = false;
+        }
+    }
+
+    /**
+     * Outcome of the request says nothing about availability of JIRA.
+     */
+    synchronized void onIgnored(Permit permit) {
+
+        if (permit.generation == generation && permit.isTrial) {
+            isTrialInProgress = false;
+        }
+    }
+}
@@ -27,11 +27,13 @@ public class CommitMessageVersionExtractor {
     private static final String VERSION_REGEX_CAPTURING_GROUP_NAME = "version";
 
     private final Pattern versionPattern;
+    private final String requiredLiteral;
 
     public CommitMessageVersionExtractor(String repositoryName) {
 
         requireNonNull(repositoryName);
         this.versionPattern = defaultPattern(repositoryName);
+        this.requiredLiteral = RequiredLiteral.of(this.versionPattern);
     }
 
     public CommitMessageVersionExtractor(String repositoryName,
@@ -41,6 +43,7 @@ public class CommitMessageVersionExtractor {
         requireNonNull(versionPattern);
 
         this.versionPattern = Pattern.compile(versionPattern);
+        this.requiredLiteral = RequiredLiteral.of(this.versionPattern);
     }
 
     private Pattern defaultPattern(String repositoryName) {
@@ -49,9 +52,14 @@ public class CommitMessageVersionExtractor {
                                        "-(?<" + VERSION_REGEX_CAPTURING_GROUP_NAME + ">.*)");
     }
 
-    Optional<String> extractVersionName(@Nullable String commitMessage) {
+    /**
+     * Messages that don't contain the literal required by the version pattern are rejected without running the
+     * pattern, which is the common case since most commits aren't release commits.
+     */
+    public Optional<String> extractVersionName(@Nullable String commitMessage) {
 
         return Optional.ofNullable(commitMessage)
+                .filter(message -> message.contains(requiredLiteral))
                 .map(versionPattern::matcher)
                 .filter(Matcher::find)
                 .map(matcher -> matcher.group(VERSION_REGEX_CAPTURING_GROUP_NAME));
@@ -0,0 +1,126 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Insertion ordered set of numeric JIRA issue ids backed by primitive arrays, used to deduplicate issue keys of large
+ * releases without boxing. Ids are stored once, in insertion order, and the open addressing hash table holds their
+ * positions.
+ */
+class IssueIdSet {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] ids;
+
+    /**
+     * Position of the id in {@link #ids} plus one, 0 marks an empty slot.
+     */
+    private int[] table;
+    private int size;
+
+    IssueIdSet() {
+
+        ids = new long[INITIAL_CAPACITY / 2];
+        table = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return true if the id was not already present
+     */
+    boolean add(long id) {
+
+        int mask = table.length - 1;
+        int i = index(id, mask);
+
+        while (table[i] != 0) {
+            if (ids[table[i] - 1] == id) {
+                return false;
+            }
+
+            i = (i + 1) & mask;
+        }
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+
+        ids[size] = id;
+        size++;
+        table[i] = size;
+
+        if (size * 2 > table.length) {
+            resize();
+        }
+
+        return true;
+    }
+
+    boolean contains(long id) {
+
+        int mask = table.length - 1;
+
+        for (int i = index(id, mask); table[i] != 0; i = (i + 1) & mask) {
+            if (ids[table[i] - 1] == id) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    int size() {
+
+        return size;
+    }
+
+    /**
+     * Passes ids to the action in the order they were first added.
+     */
+    void forEach(LongConsumer action) {
+
+        for (int position = 0; position < size; position++) {
+            action.accept(ids[position]);
+        }
+    }
+
+    private void resize() {
+
+        int[] resized = new int[table.length * 2];
+        int mask = resized.length - 1;
+
+        for (int position = 0; position < size; position++) {
+            int i = index(ids[position], mask);
+
+            while (resized[i] != 0) {
+                i = (i + 1) & mask;
+            }
+
+            resized[i] = position + 1;
+        }
+
+        table = resized;
+    }
+
+    private static int index(long id, int mask) {
+
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Finds JIRA issue keys of given projects in commit messages in a single pass without regular expressions. Project
+ * keys are compiled into a trie, so the cost of a scan does not depend on the number of projects. Issue key must start
+ * on a word boundary, so "XABC-12" does not contain an issue of project "ABC", which also means that matching only
+ * ever starts at the beginning of a word and the trie needs no failure links. Scanners are immutable, callers build
+ * one per set of project keys and share it between pushes (the hook keeps it in the cached repository
+ * configuration), found keys are passed to a sink so no intermediate collections are created per message.
+ */
+public class IssueKeyScanner {
+
+    /**
+     * Project key characters: A-Z, 0-9 and _.
+     */
+    private static final int ALPHABET_SIZE = 26 + 10 + 1;
+    private static final int ROOT = 0;
+
+    /**
+     * Longer issue ids are not valid JIRA issue numbers and would not fit into a long.
+     */
+    private static final int MAX_ISSUE_ID_LENGTH = 18;
+    private static final int NONE = 0;
+
+    /**
+     * Transitions of all trie nodes, node n occupies indexes [n * ALPHABET_SIZE, (n + 1) * ALPHABET_SIZE).
+     */
+    private final int[] transitions;
+
+    /**
+     * Project key that ends in a node, null for inner nodes.
+     */
+    private final ProjectKey[] projectKeys;
+
+    static IssueKeyScanner of(ProjectKey projectKey) {
+
+        return of(ImmutableSet.of(projectKey));
+    }
+
+    public static IssueKeyScanner of(Collection<ProjectKey> projectKeys) {
+
+        return new IssueKeyScanner(ImmutableSet.copyOf(projectKeys));
+    }
+
+    private IssueKeyScanner(Set<ProjectKey> projectKeys) {
+
+        int maxNodeCount = 1 + projectKeys.stream().mapToInt(key -> key.getValue().length()).sum();
+        int[] transitions = new int[maxNodeCount * ALPHABET_SIZE];
+        ProjectKey[] nodeProjectKeys = new ProjectKey[maxNodeCount];
+        int nodeCount = 1;
+
+        for (ProjectKey projectKey : projectKeys) {
+            String value = projectKey.getValue();
+            int node = ROOT;
+
+            for (int i = 0; i < value.length(); i++) {
+                int transition = node * ALPHABET_SIZE + toSymbol(value.charAt(i));
+
+                if (transitions[transition] == NONE) {
+                    transitions[transition] = nodeCount++;
+                }
+
+                node = transitions[transition];
+            }
+
+            nodeProjectKeys[node] = projectKey;
+        }
+
+        this.transitions = Arrays.copyOf(transitions, nodeCount * ALPHABET_SIZE);
+        this.projectKeys = Arrays.copyOf(nodeProjectKeys, nodeCount);
+    }
+
+    void scan(CharSequence message, Consumer<IssueKey> sink) {
+
+        int length = message.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = message.charAt(i);
+
+            if (!isWordCharacter(c)) {
+                i++;
+                continue;
+            }
+
+            if (isUpperCaseLetter(c)) {
+                i = scanIssueKey(message, i, sink);
+            }
+
+            while (i < length && isWordCharacter(message.charAt(i))) {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return index of the first character after the issue key or after the longest project key prefix
+     */
+    private int scanIssueKey(CharSequence message, int start, Consumer<IssueKey> sink) {
+
+        int length = message.length();
+        int node = ROOT;
+        int i = start;
+
+        while (i < length && isProjectKeyCharacter(message.charAt(i))) {
+            node = transitions[node * ALPHABET_SIZE + toSymbol(message.charAt(i))];
+
+            if (node == NONE) {
+                return i;
+            }
+
+            i++;
+        }
+
+        ProjectKey projectKey = projectKeys[node];
+
+        if (projectKey == null
+            || i + 1 >= length
+            || message.charAt(i) != '-'
+            || !isDigit(message.charAt(i + 1))) {
+            return i;
+        }
+
+        int issueIdStart = i + 1;
+        i = issueIdStart;
+
+        while (i < length && isDigit(message.charAt(i))) {
+            i++;
+        }
+
+        if (i - issueIdStart > MAX_ISSUE_ID_LENGTH) {
+            return i;
+        }
+
+        sink.accept(new IssueKey(projectKey, new IssueId(message.subSequence(issueIdStart, i).toString())));
+
+        return i;
+    }
+
+    private static int toSymbol(char c) {
+
+        if (isUpperCaseLetter(c)) {
+            return c - 'A';
+        }
+
+        if (isDigit(c)) {
+            return 26 + c - '0';
+        }
+
+        return ALPHABET_SIZE - 1;
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return isProjectKeyCharacter(c) || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isProjectKeyCharacter(char c) {
+
+        return isUpperCaseLetter(c) || isDigit(c) || c == '_';
+    }
+
+    private static boolean isUpperCaseLetter(char c) {
+
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isDigit(char c) {
+
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of updating a batch of JIRA issues. Failure of a single issue does not abort the batch. Skipped issues do not
+ * exist or already were up to date.
+ */
+@Value
+class IssueUpdateResult {
+
+    private final List<IssueKey> updated;
+    private final List<IssueKey> skipped;
+    private final Map<IssueKey, JiraServiceException> failed;
+    private final Duration duration;
+
+    IssueUpdateResult(List<IssueKey> updated,
+                      List<IssueKey> skipped,
+                      Map<IssueKey, JiraServiceException> failed,
+                      Duration duration) {
+        this.updated = updated;
+        this.skipped = skipped;
+        this.failed = failed;
+        this.duration = duration;
+    }
+}
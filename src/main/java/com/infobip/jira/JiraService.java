@@ -17,131 +17,921 @@ package com.infobip.jira;
 
 import com.atlassian.applinks.api.*;
 import com.atlassian.applinks.api.application.jira.JiraApplicationType;
+import com.atlassian.applinks.api.event.ApplicationLinkEvent;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.sal.api.lifecycle.LifecycleAware;
+import com.atlassian.sal.api.net.Response;
 import com.atlassian.sal.api.net.ResponseException;
+import com.atlassian.sal.api.net.ResponseStatusException;
+import com.atlassian.sal.api.net.ResponseTransportException;
+import com.atlassian.sal.api.user.UserKey;
+import com.atlassian.sal.api.user.UserManager;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.infobip.infrastructure.ObjectMapperFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 import static com.atlassian.sal.api.net.Request.MethodType;
 
 /**
  * @see <a href="https://docs.atlassian.com/jira/REST/6.4/">JIRA 6.4 REST API documentation</a>
  */
-public class JiraService {
+public class JiraService implements LifecycleAware {
+
+	private static final int SEARCH_CHUNK_SIZE = 100;
+
+	private static final int ISSUE_UPDATE_PARALLELISM = Math.max(1, Integer.getInteger(
+			"jira-version-generator.issue-update-parallelism", 8));
+
+	private static final int BULK_EDIT_CHUNK_SIZE = 1000;
+	private static final String BULK_EDIT_COMPLETE = "COMPLETE";
+	private static final Set<String> BULK_EDIT_FINAL_STATUSES = new HashSet<>(
+			Arrays.asList(BULK_EDIT_COMPLETE, "FAILED", "CANCELLED", "DEAD"));
+	private static final long BULK_EDIT_INITIAL_POLL_INTERVAL_MILLIS = 250;
+	private static final long BULK_EDIT_MAX_POLL_INTERVAL_MILLIS = 2000;
+	private static final Duration BULK_EDIT_TIMEOUT = Duration.ofMillis(Long.getLong(
+			"jira-version-generator.bulk-edit-timeout-millis", 30_000));
 
 	private final ApplicationLinkService applicationLinkService;
-	private final ObjectMapper objectMapper;
+	private final UserManager userManager;
+	private final EventPublisher eventPublisher;
+	private final ObjectReader jsonReader;
+	private final ObjectReader versionReader;
+	private final ObjectWriter jsonWriter;
+	private final ObjectWriter versionWriter;
+	private final VersionListReader versionListReader;
+	private final RetryPolicy retryPolicy = RetryPolicy.fromSystemProperties();
+	private final ConcurrentMap<ApplicationId, Boolean> cloudDeployment = new ConcurrentHashMap<>();
+	private final ConcurrentMap<ApplicationId, Boolean> versionQuerySupport = new ConcurrentHashMap<>();
+	private final ConcurrentMap<ApplicationId, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+	private final VersionCache versionCache = new VersionCache(
+			Duration.ofSeconds(Long.getLong("jira-version-generator.version-cache-ttl-seconds", 600)),
+			Long.getLong("jira-version-generator.version-cache-size", 100));
+	private final Cache<String, ApplicationLinkRequestFactory> requestFactories = CacheBuilder.newBuilder()
+			.maximumSize(1000)
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
+	private volatile ApplicationLink jiraApplicationLink;
 
-	public JiraService(ApplicationLinkService applicationLinkService) {
+	public JiraService(ApplicationLinkService applicationLinkService,
+	                   UserManager userManager,
+	                   EventPublisher eventPublisher) {
 
 		this.applicationLinkService = applicationLinkService;
-		this.objectMapper = ObjectMapperFactory.getInstance();
-		this.objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		this.userManager = userManager;
+		this.eventPublisher = eventPublisher;
+		this.jsonReader = ObjectMapperFactory.getReader().without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		this.versionReader = jsonReader.forType(SerializedVersion.class);
+		this.jsonWriter = ObjectMapperFactory.getWriter();
+		this.versionWriter = jsonWriter.forType(SerializedVersion.class);
+		this.versionListReader = new VersionListReader(jsonReader.getFactory());
 	}
 
 	Optional<SerializedVersion> findVersion(ProjectKey projectKey, String name) {
-		return getVersions(projectKey).stream()
-				.filter(version -> Objects.equals(name, version.getName()))
-				.findFirst();
+		return versionCache.find(projectKey, name, this::readVersion);
 	}
 
 	SerializedVersion createJiraVersion(SerializedVersion version) {
 
-		String responseJson = executeJsonHttpRequest(MethodType.POST, "/rest/api/2/version", version);
+		ProjectKey projectKey = new ProjectKey(version.getProject());
+		SerializedVersion createdVersion;
+
+		try {
+			String responseJson = executeJsonHttpRequest(MethodType.POST,
+			                                              "/rest/api/2/version",
+			                                              toJson(versionWriter, version),
+			                                              false);
+			createdVersion = toVersion(responseJson);
+		} catch (JiraServiceException e) {
+			// most likely the version was created on JIRA in the meantime
+			versionCache.invalidate(projectKey);
+			throw e;
+		}
+
+		versionCache.put(projectKey, createdVersion);
+		return createdVersion;
+	}
+
+	/**
+	 * Issues that do not exist or already have the version are skipped, they are found with JQL searches of
+	 * {@link #SEARCH_CHUNK_SIZE} issues each, so only the needed updates are sent. On JIRA Cloud issues
+	 * are updated with a few bulk edit tasks, otherwise (or if a bulk edit could not be submitted) issues are updated
+	 * one by one concurrently, at most {@link #ISSUE_UPDATE_PARALLELISM} at a time. The calling thread takes part in
+	 * the updates and also runs the ones the executor has not picked up, so a busy executor only reduces parallelism.
+	 */
+	IssueUpdateResult addVersionToIssues(String versionName,
+	                                     ProjectKey projectKey,
+	                                     List<IssueKey> issueKeys,
+	                                     Executor executor) {
+
+		long start = System.nanoTime();
+		boolean cloud = isCloud();
+		Map<IssueKey, String> issueIdsToUpdate = findIssuesWithoutVersion(versionName, issueKeys, cloud, executor);
+		List<IssueKey> updated = new ArrayList<>();
+		Map<IssueKey, JiraServiceException> failed = new LinkedHashMap<>();
+		List<IssueKey> issueKeysToUpdate = new ArrayList<>(issueIdsToUpdate.keySet());
+
+		if (!issueKeysToUpdate.isEmpty() && cloud) {
+			issueKeysToUpdate = bulkAddVersionToIssues(versionName, projectKey, issueIdsToUpdate, updated, failed);
+		}
+
+		addVersionToIssuesOneByOne(versionName, projectKey, issueKeysToUpdate, executor, updated, failed);
+
+		List<IssueKey> skipped = new ArrayList<>(issueKeys);
+		skipped.removeAll(issueIdsToUpdate.keySet());
 
-		return toObject(responseJson, SerializedVersion.class);
+		return new IssueUpdateResult(updated, skipped, failed, Duration.ofNanos(System.nanoTime() - start));
 	}
 
-	void addVersionToIssues(String versionName,
-	                        ProjectKey projectKey,
-	                        List<IssueKey> issueKeys) {
+	private void addVersionToIssuesOneByOne(String versionName,
+	                                        ProjectKey projectKey,
+	                                        List<IssueKey> issueKeys,
+	                                        Executor executor,
+	                                        List<IssueKey> updated,
+	                                        Map<IssueKey, JiraServiceException> failed) {
+
+		ObjectNode request = JsonNodeFactory.instance.objectNode();
+		request.putObject("update")
+		       .putArray("fixVersions")
+		       .addObject()
+		       .putObject("add")
+		       .put("name", versionName)
+		       .put("project", projectKey.getValue());
+		String body = toJson(jsonWriter, request);
+		JiraServiceException[] failures = new JiraServiceException[issueKeys.size()];
+
+		forEachConcurrently(issueKeys.size(), executor, index -> {
+			try {
+				executeJsonHttpRequest(MethodType.PUT, "/rest/api/2/issue/" + issueKeys.get(index), body, true);
+			} catch (JiraServiceException e) {
+				failures[index] = e;
+			}
+		});
+
+		for (int i = 0; i < issueKeys.size(); i++) {
+			if (failures[i] == null) {
+				updated.add(issueKeys.get(i));
+			} else {
+				failed.put(issueKeys.get(i), failures[i]);
+			}
+		}
+	}
+
+	/**
+	 * Issues are selected by key, so issues are bulk edited even if the search that finds their ids failed.
+	 *
+	 * @param issueIds issue ids by issue key, null if the id is not known
+	 * @return issues that were not bulk edited and have to be updated one by one
+	 * @see <a href="https://developer.atlassian.com/cloud/jira/platform/rest/v3/api-group-issue-bulk-operations/">
+	 * JIRA Cloud bulk operations</a>
+	 */
+	private List<IssueKey> bulkAddVersionToIssues(String versionName,
+	                                              ProjectKey projectKey,
+	                                              Map<IssueKey, String> issueIds,
+	                                              List<IssueKey> updated,
+	                                              Map<IssueKey, JiraServiceException> failed) {
+
+		List<IssueKey> remaining = new ArrayList<>();
+		List<IssueKey> bulkEditable = new ArrayList<>(issueIds.keySet());
+
+		Optional<SerializedVersion> version;
+
+		try {
+			version = findVersion(projectKey, versionName);
+		} catch (JiraServiceException e) {
+			version = Optional.empty();
+		}
+
+		if (!version.isPresent()) {
+			remaining.addAll(bulkEditable);
+			return remaining;
+		}
+
+		Map<String, List<IssueKey>> submittedTasks = new LinkedHashMap<>();
+
+		for (int i = 0; i < bulkEditable.size(); i += BULK_EDIT_CHUNK_SIZE) {
+			List<IssueKey> chunk = bulkEditable.subList(i, Math.min(i + BULK_EDIT_CHUNK_SIZE, bulkEditable.size()));
+
+			try {
+				submittedTasks.put(submitBulkEdit(version.get(), chunk), chunk);
+			} catch (JiraServiceException e) {
+				remaining.addAll(chunk);
+			}
+		}
+
+		Map<String, JsonNode> finishedTasks = new HashMap<>();
+		Map<String, JiraServiceException> unfinishedTasks = new HashMap<>();
+		awaitBulkEdits(submittedTasks.keySet(), finishedTasks, unfinishedTasks);
+
+		submittedTasks.forEach((taskId, chunk) -> {
+			JiraServiceException exception = unfinishedTasks.get(taskId);
+
+			if (exception == null) {
+				collectBulkEditResult(taskId, finishedTasks.get(taskId), chunk, issueIds, updated, failed);
+			} else {
+				chunk.forEach(issueKey -> failed.put(issueKey, exception));
+			}
+		});
+
+		return remaining;
+	}
+
+	/**
+	 * Notifications are not sent, same as for issues updated one by one.
+	 */
+
+	private String submitBulkEdit(SerializedVersion version, List<IssueKey> issueKeys) {
+
+		Map<String, Object> fixVersions = new LinkedHashMap<>();
+		fixVersions.put("fieldId", "fixVersions");
+		fixVersions.put("bulkEditMultiVersionPickerOption", "ADD");
+		fixVersions.put("versions", Collections.singletonList(Collections.singletonMap("versionId", version.getId())));
+
+		List<String> selectedIssueKeys = new ArrayList<>();
+		issueKeys.forEach(issueKey -> selectedIssueKeys.add(issueKey.toString()));
+
+		Map<String, Object> request = new LinkedHashMap<>();
+		request.put("selectedIssueIdsOrKeys", selectedIssueKeys);
+		request.put("selectedActions", Collections.singletonList("fixVersions"));
+		request.put("editedFieldsInput",
+		            Collections.singletonMap("multipleVersionPickerFields", Collections.singletonList(fixVersions)));
+		request.put("sendBulkNotification", false);
+
+		String url = "/rest/api/3/bulk/issues/fields";
+		JsonNode response = toJsonNode(executeJsonHttpRequest(MethodType.POST, url, request, false));
+		String taskId = response.path("taskId").asText();
+
+		if (taskId.isEmpty()) {
+			throw new JiraServiceException("Bulk edit was not accepted: " + response);
+		}
+
+		return taskId;
+	}
+
+	/**
+	 * Progress reports issues by id. An issue whose id is not known counts as edited only if every issue of the task
+	 * was processed.
+	 */
+	private void collectBulkEditResult(String taskId,
+	                                   JsonNode progress,
+	                                   List<IssueKey> issueKeys,
+	                                   Map<IssueKey, String> issueIds,
+	                                   List<IssueKey> updated,
+	                                   Map<IssueKey, JiraServiceException> failed) {
+
+		String status = progress.path("status").asText();
+		Set<String> processedIssueIds = new HashSet<>();
+		progress.path("processedAccessibleIssues").forEach(issueId -> processedIssueIds.add(issueId.asText()));
+		JsonNode failedIssues = progress.path("failedAccessibleIssues");
+
+		boolean allProcessed = processedIssueIds.size() == issueKeys.size();
 
 		for (IssueKey issueKey : issueKeys) {
-			String body = String.format(
-					"{\"update\":{\"fixVersions\":[{\"add\":{\"name\":\"%s\",\"project\":\"%s\"}}]}}",
-					versionName,
-					projectKey.getValue());
-			executeJsonHttpRequest(MethodType.PUT, "/rest/api/2/issue/" + issueKey, body);
+			String issueId = issueIds.get(issueKey);
+			JsonNode errors = issueId == null ? failedIssues.path(issueKey.toString()) : failedIssues.path(issueId);
+
+			if (!errors.isMissingNode()) {
+				failed.put(issueKey, new JiraServiceException("Bulk edit of " + issueKey + " failed: " + errors));
+			} else if (BULK_EDIT_COMPLETE.equals(status)
+			           && (issueId == null ? allProcessed : processedIssueIds.contains(issueId))) {
+				updated.add(issueKey);
+			} else {
+				failed.put(issueKey, new JiraServiceException(
+						"Bulk edit task " + taskId + " ended with status " + status + " without editing " + issueKey,
+						true));
+			}
+		}
+	}
+
+	/**
+	 * Tasks are polled together against a single deadline of {@link #BULK_EDIT_TIMEOUT}, so the calling hook worker is
+	 * held for at most that long however many tasks a release needs. Tasks that did not finish are reported as
+	 * temporary failures, so their issues are retried later, adding a version again is harmless.
+	 *
+	 * @param finished   receives final progress by task id
+	 * @param unfinished receives the failure by task id of tasks that could not be polled or did not finish in time
+	 */
+	private void awaitBulkEdits(Collection<String> taskIds,
+	                            Map<String, JsonNode> finished,
+	                            Map<String, JiraServiceException> unfinished) {
+
+		long deadline = System.nanoTime() + BULK_EDIT_TIMEOUT.toNanos();
+		long pollIntervalMillis = BULK_EDIT_INITIAL_POLL_INTERVAL_MILLIS;
+		Set<String> pending = new LinkedHashSet<>(taskIds);
+
+		while (true) {
+			for (Iterator<String> iterator = pending.iterator(); iterator.hasNext(); ) {
+				String taskId = iterator.next();
+
+				try {
+					String url = "/rest/api/3/bulk/queue/" + taskId;
+					JsonNode progress = toJsonNode(executeJsonHttpRequest(MethodType.GET, url, true));
+
+					if (BULK_EDIT_FINAL_STATUSES.contains(progress.path("status").asText())) {
+						finished.put(taskId, progress);
+						iterator.remove();
+					}
+				} catch (JiraServiceException e) {
+					unfinished.put(taskId, e);
+					iterator.remove();
+				}
+			}
+
+			if (pending.isEmpty()) {
+				return;
+			}
+
+			if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis) > deadline) {
+				JiraServiceException exception = new JiraServiceException(
+						"Bulk edit tasks " + pending + " did not finish in " + BULK_EDIT_TIMEOUT, true);
+				pending.forEach(taskId -> unfinished.put(taskId, exception));
+				return;
+			}
+
+			try {
+				Thread.sleep(pollIntervalMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				JiraServiceException exception = new JiraServiceException(
+						"Interrupted while waiting for bulk edit tasks " + pending, e);
+				pending.forEach(taskId -> unfinished.put(taskId, exception));
+				return;
+			}
+
+			pollIntervalMillis = Math.min(pollIntervalMillis * 2, BULK_EDIT_MAX_POLL_INTERVAL_MILLIS);
 		}
 	}
 
+	/**
+	 * Bulk edit and the token paginated issue search are available only on JIRA Cloud, the offset paginated search is
+	 * available only on JIRA Server and Data Center. Deployment type is fetched once per application link, a failed
+	 * detection is retried on next call.
+	 */
+	private boolean isCloud() {
+
+		ApplicationLink applicationLink = getJiraApplicationLink();
+		Boolean cloud = cloudDeployment.get(applicationLink.getId());
+
+		if (cloud != null) {
+			return cloud;
+		}
+
+		try {
+			JsonNode serverInfo = toJsonNode(executeJsonHttpRequest(MethodType.GET, "/rest/api/2/serverInfo", true));
+			cloud = "Cloud".equals(serverInfo.path("deploymentType").asText());
+		} catch (JiraServiceException e) {
+			return false;
+		}
+
+		cloudDeployment.put(applicationLink.getId(), cloud);
+		return cloud;
+	}
+
+	/**
+	 * If a search fails all issues of its chunk are returned without issue ids, updates then behave as if there was no
+	 * search.
+	 *
+	 * @return issue ids of issues that need the version by issue key, in order of given issue keys
+	 */
+	private Map<IssueKey, String> findIssuesWithoutVersion(String versionName,
+	                                                      List<IssueKey> issueKeys,
+	                                                      boolean cloud,
+	                                                      Executor executor) {
+
+		List<List<IssueKey>> chunks = new ArrayList<>();
+
+		for (int i = 0; i < issueKeys.size(); i += SEARCH_CHUNK_SIZE) {
+			chunks.add(issueKeys.subList(i, Math.min(i + SEARCH_CHUNK_SIZE, issueKeys.size())));
+		}
+
+		@SuppressWarnings("unchecked")
+		Map<String, String>[] foundIssueIds = new Map[chunks.size()];
+
+		forEachConcurrently(chunks.size(), executor, index -> {
+			try {
+				foundIssueIds[index] = searchIssuesWithoutVersion(versionName, chunks.get(index), cloud);
+			} catch (JiraServiceException ignored) {
+				// all issues of the chunk will be updated
+			}
+		});
+
+		Map<IssueKey, String> issuesWithoutVersion = new LinkedHashMap<>();
+
+		for (int i = 0; i < chunks.size(); i++) {
+			for (IssueKey issueKey : chunks.get(i)) {
+				if (foundIssueIds[i] == null) {
+					issuesWithoutVersion.put(issueKey, null);
+				} else if (foundIssueIds[i].containsKey(issueKey.toString())) {
+					issuesWithoutVersion.put(issueKey, foundIssueIds[i].get(issueKey.toString()));
+				}
+			}
+		}
+
+		return issuesWithoutVersion;
+	}
+
+	/**
+	 * @return issue ids by issue key, null if the issue could not be searched
+	 * @see <a href="https://developer.atlassian.com/cloud/jira/platform/rest/v3/api-group-issue-search/">
+	 * JIRA Cloud issue search</a>
+	 */
+	private Map<String, String> searchIssuesWithoutVersion(String versionName, List<IssueKey> issueKeys, boolean cloud) {
+		Map<String, String> foundIssueIds = new HashMap<>();
+
+		if (cloud) {
+			searchCloudIssuesWithoutVersion(versionName, issueKeys, foundIssueIds);
+			return foundIssueIds;
+		}
+
+		String jql = getIssuesWithoutVersionJql(versionName, issueKeys);
+
+		int startAt = 0;
+
+		while (true) {
+			Map<String, Object> request = new LinkedHashMap<>();
+			request.put("jql", jql);
+			request.put("startAt", startAt);
+			request.put("maxResults", SEARCH_CHUNK_SIZE);
+			request.put("fields", Collections.singletonList("key"));
+			// keys of deleted issues must not fail the whole search
+			request.put("validateQuery", false);
+
+			JsonNode response = toJsonNode(executeJsonHttpRequest(MethodType.POST, "/rest/api/2/search", request, true));
+			JsonNode issues = response.path("issues");
+			issues.forEach(issue -> foundIssueIds.put(issue.path("key").asText(), issue.path("id").asText()));
+			startAt += issues.size();
+
+			if (issues.size() == 0 || startAt >= response.path("total").asInt()) {
+				return foundIssueIds;
+			}
+		}
+	}
+
+	private String getIssuesWithoutVersionJql(String versionName, List<IssueKey> issueKeys) {
+
+		StringJoiner issueKeysJoiner = new StringJoiner(",");
+		issueKeys.forEach(issueKey -> issueKeysJoiner.add(issueKey.toString()));
+		return String.format("issuekey in (%s) AND (fixVersion is EMPTY OR fixVersion != \"%s\")",
+		                     issueKeysJoiner,
+		                     versionName.replace("\\", "\\\\").replace("\"", "\\\""));
+	}
+
+	/**
+	 * The token paginated search has no validateQuery option, JIRA Cloud rejects a query with a key of a deleted or
+	 * invisible issue with 400. The issues are then searched once more without the keys named in the error messages,
+	 * which do not need the version, or in two halves if no key is named, so a single such issue does not disable the
+	 * search for the whole chunk. Issues whose second search fails are returned with a null issue id.
+	 */
+	private void searchCloudIssuesWithoutVersion(String versionName,
+	                                             List<IssueKey> issueKeys,
+	                                             Map<String, String> foundIssueIds) {
+
+		try {
+			searchCloudIssues(getIssuesWithoutVersionJql(versionName, issueKeys), foundIssueIds);
+			return;
+		} catch (JiraServiceException e) {
+			if (!isBadRequest(e) || issueKeys.size() == 1) {
+				throw e;
+			}
+
+			String errorMessages = getResponseBody(e);
+			List<IssueKey> validIssueKeys = new ArrayList<>();
+			issueKeys.stream()
+			         .filter(issueKey -> !errorMessages.contains("'" + issueKey + "'"))
+			         .forEach(validIssueKeys::add);
+
+			if (validIssueKeys.size() < issueKeys.size()) {
+				searchCloudIssuesOnce(versionName, validIssueKeys, foundIssueIds);
+				return;
+			}
+		}
+
+		int middle = issueKeys.size() / 2;
+		searchCloudIssuesOnce(versionName, issueKeys.subList(0, middle), foundIssueIds);
+		searchCloudIssuesOnce(versionName, issueKeys.subList(middle, issueKeys.size()), foundIssueIds);
+	}
+
+	private void searchCloudIssuesOnce(String versionName, List<IssueKey> issueKeys, Map<String, String> foundIssueIds) {
+
+		if (issueKeys.isEmpty()) {
+			return;
+		}
+
+		try {
+			searchCloudIssues(getIssuesWithoutVersionJql(versionName, issueKeys), foundIssueIds);
+		} catch (JiraServiceException e) {
+			issueKeys.forEach(issueKey -> foundIssueIds.put(issueKey.toString(), null));
+		}
+	}
+
+	/**
+	 * Pages are linked by tokens, the last page has no next page token.
+	 */
+	private void searchCloudIssues(String jql, Map<String, String> foundIssueIds) {
+
+		String nextPageToken = null;
+
+		do {
+			Map<String, Object> request = new LinkedHashMap<>();
+			request.put("jql", jql);
+			request.put("maxResults", SEARCH_CHUNK_SIZE);
+			request.put("fields", Collections.singletonList("key"));
+
+			if (nextPageToken != null) {
+				request.put("nextPageToken", nextPageToken);
+			}
+
+			JsonNode response = toJsonNode(executeJsonHttpRequest(MethodType.POST, "/rest/api/3/search/jql", request, true));
+			JsonNode issues = response.path("issues");
+			issues.forEach(issue -> foundIssueIds.put(issue.path("key").asText(), issue.path("id").asText()));
+			nextPageToken = response.path("isLast").asBoolean(false) || issues.size() == 0
+					? null
+					: Strings.emptyToNull(response.path("nextPageToken").asText());
+		} while (nextPageToken != null);
+	}
+
 	void releaseVersion(SerializedVersion version, LocalDate releaseDate) {
 
-		String body = String.format(
-				"{\"released\":true,\"releaseDate\":\"%s\"}",
-				releaseDate);
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("released", true);
+		body.put("releaseDate", releaseDate);
+
+		try {
+			executeJsonHttpRequest(MethodType.PUT, "/rest/api/2/version/" + version.getId(), body, true);
+		} catch (JiraServiceException e) {
+			versionCache.invalidate(version);
+			throw e;
+		}
 
-		executeJsonHttpRequest(MethodType.PUT, "/rest/api/2/version/" + version.getId(), body);
+		versionCache.replace(new SerializedVersion(version.getId(),
+		                                           version.getName(),
+		                                           version.getProject(),
+		                                           releaseDate,
+		                                           true));
 	}
 
-	private List<SerializedVersion> getVersions(ProjectKey projectKey) {
+	/**
+	 * Uses the paginated version endpoint filtered by name if JIRA has it (JIRA 7 and newer), otherwise reads the whole
+	 * version list. Availability of the endpoint is remembered per application link, it is considered missing only if
+	 * it responds with 404 while the version list of the same project exists.
+	 */
+	private VersionListReader.Result readVersion(ProjectKey projectKey, String name) {
+
+		ApplicationId applicationId = getJiraApplicationLink().getId();
+		Boolean versionQuerySupported = versionQuerySupport.get(applicationId);
+
+		if (Boolean.FALSE.equals(versionQuerySupported)) {
+			return readVersionFromList(projectKey, name);
+		}
+
+		try {
+			VersionListReader.Result result = VersionListReader.Result.of(queryVersion(projectKey, name));
+			versionQuerySupport.put(applicationId, true);
+			return result;
+		} catch (JiraServiceException e) {
+			if (Boolean.TRUE.equals(versionQuerySupported) || !isNotFound(e)) {
+				throw e;
+			}
+		}
+
+		VersionListReader.Result result = readVersionFromList(projectKey, name);
+		versionQuerySupport.put(applicationId, false);
+		return result;
+	}
+
+	private Optional<SerializedVersion> queryVersion(ProjectKey projectKey, String name) {
+
+		String encodedName;
+
+		try {
+			encodedName = URLEncoder.encode(name, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+
+		int startAt = 0;
+
+		while (true) {
+			String url = String.format("/rest/api/2/project/%s/version?query=%s&startAt=%d",
+			                           projectKey.getValue(),
+			                           encodedName,
+			                           startAt);
+			JsonNode page = toJsonNode(executeJsonHttpRequest(MethodType.GET, url, true));
+			JsonNode versions = page.path("values");
+
+			for (JsonNode version : versions) {
+				// query matches parts of names
+				if (name.equals(version.path("name").asText())) {
+					return Optional.of(toVersion(version));
+				}
+			}
+
+			startAt += versions.size();
+
+			if (versions.size() == 0 || page.path("isLast").asBoolean(true)) {
+				return Optional.empty();
+			}
+		}
+	}
+
+	private VersionListReader.Result readVersionFromList(ProjectKey projectKey, String name) {
 
 		String url = String.format("/rest/api/2/project/%s/versions", projectKey.getValue());
-		String versionsJson = executeJsonHttpRequest(MethodType.GET, url);
 
 		try {
-			return objectMapper.readValue(versionsJson, new TypeReference<List<SerializedVersion>>() {});
+			return execute(MethodType.GET, url, true, () -> getJiraApplicationLinkRequestFactory()
+					.createRequest(MethodType.GET, url)
+					.executeAndReturn(response -> readVersionFromList(response, name)));
+		} catch (CredentialsRequiredException | ResponseException e) {
+			throw handleRequestFailure("Failed to read versions of " + projectKey.getValue(), e);
+		}
+	}
+
+	/**
+	 * Versions are parsed while the response body is downloaded, a project with many versions is never held in memory
+	 * as a whole.
+	 */
+	private VersionListReader.Result readVersionFromList(Response response, String name) throws ResponseException {
+
+		if (!response.isSuccessful()) {
+			throw new ResponseStatusException("Unexpected response received. Status code: " + response.getStatusCode(),
+			                                  response);
+		}
+
+		try (InputStream versionsJson = response.getResponseBodyAsStream()) {
+			return versionListReader.find(versionsJson, name);
+		} catch (JsonProcessingException | RuntimeException e) {
+			throw new ResponseException("Failed to read versions", e);
 		} catch (IOException e) {
-			throw new JiraServiceException("Failed ", e);
+			throw new ResponseTransportException(e);
 		}
 	}
 
-	private ApplicationLinkRequestFactory getJiraApplicationLinkRequestFactory() {
+	private boolean isNotFound(JiraServiceException e) {
+
+		return e.getCause() instanceof ResponseStatusException
+		       && ((ResponseStatusException) e.getCause()).getResponse().getStatusCode() == 404;
+	}
+
+	private boolean isBadRequest(JiraServiceException e) {
+
+		return e.getCause() instanceof ResponseStatusException
+		       && ((ResponseStatusException) e.getCause()).getResponse().getStatusCode() == 400;
+	}
+
+	/**
+	 * @return body of the failed response, empty if it can not be read
+	 */
+	private String getResponseBody(JiraServiceException e) {
+
+		try {
+			return Strings.nullToEmpty(((ResponseStatusException) e.getCause()).getResponse().getResponseBodyAsString());
+		} catch (ResponseException | RuntimeException ignored) {
+			return "";
+		}
+	}
+
+	private void forEachConcurrently(int count, Executor executor, IntConsumer action) {
+
+		AtomicInteger nextIndex = new AtomicInteger();
+		Runnable worker = () -> {
+			for (int index = nextIndex.getAndIncrement(); index < count; index = nextIndex.getAndIncrement()) {
+				action.accept(index);
+			}
+		};
+
+		List<FutureTask<Void>> helpers = new ArrayList<>();
+
+		for (int i = 1; i < Math.min(ISSUE_UPDATE_PARALLELISM, count); i++) {
+			FutureTask<Void> helper = new FutureTask<>(worker, null);
+			helpers.add(helper);
+
+			try {
+				executor.execute(helper);
+			} catch (RejectedExecutionException ignored) {
+				// work will be done by the calling thread
+			}
+		}
 
-		ApplicationLink applicationLink = applicationLinkService.getPrimaryApplicationLink(JiraApplicationType.class);
+		worker.run();
+
+		for (FutureTask<Void> helper : helpers) {
+			// completes immediately if the helper has not started yet since all work has been taken
+			helper.run();
+			await(helper);
+		}
+	}
+
+	private void await(Future<Void> future) {
+
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while updating issues", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+
+			throw new IllegalStateException("Failed to update issues", e.getCause());
+		}
+	}
+
+	/**
+	 * JIRA application link and request factories of its users are resolved once and reused until application links
+	 * change or authentication fails.
+	 */
+	private ApplicationLink getJiraApplicationLink() {
+
+		ApplicationLink applicationLink = jiraApplicationLink;
+
+		if (applicationLink != null) {
+			return applicationLink;
+		}
+
+		applicationLink = applicationLinkService.getPrimaryApplicationLink(JiraApplicationType.class);
 
 		if (applicationLink == null) {
 			throw new IllegalStateException("Primary JIRA application link does not exist!");
 		}
 
-		return applicationLink.createAuthenticatedRequestFactory();
+		jiraApplicationLink = applicationLink;
+		return applicationLink;
+	}
+
+	private ApplicationLinkRequestFactory getJiraApplicationLinkRequestFactory() {
+
+		UserKey userKey = userManager.getRemoteUserKey();
+		String requestFactoryKey = userKey == null ? "" : userKey.getStringValue();
+		ApplicationLinkRequestFactory requestFactory = requestFactories.getIfPresent(requestFactoryKey);
+
+		if (requestFactory == null) {
+			requestFactory = getJiraApplicationLink().createAuthenticatedRequestFactory();
+			requestFactories.put(requestFactoryKey, requestFactory);
+		}
+
+		return requestFactory;
+	}
+
+	@EventListener
+	public void onApplicationLinkEvent(ApplicationLinkEvent event) {
+
+		invalidateApplicationLink();
+	}
+
+	private void invalidateApplicationLink() {
+
+		jiraApplicationLink = null;
+		requestFactories.invalidateAll();
+	}
+
+	private JiraServiceException handleRequestFailure(String message, Exception e) {
+
+		if (e instanceof CredentialsRequiredException || isUnauthorized(e)) {
+			invalidateApplicationLink();
+		}
+
+		return new JiraServiceException(message, e);
+	}
+
+	private boolean isUnauthorized(Exception e) {
+
+		return e instanceof ResponseStatusException
+		       && ((ResponseStatusException) e).getResponse().getStatusCode() == 401;
 	}
 
-	private String executeJsonHttpRequest(MethodType methodType, String url, Object body) {
+	@Override
+	public void onStart() {
 
-		return executeJsonHttpRequest(methodType, url, toJson(body));
+		eventPublisher.register(this);
 	}
 
-	private String executeJsonHttpRequest(MethodType methodType, String url, String body) {
+	@Override
+	public void onStop() {
+
+		eventPublisher.unregister(this);
+	}
+
+	private String executeJsonHttpRequest(MethodType methodType, String url, Object body, boolean idempotent) {
+
+		return executeJsonHttpRequest(methodType, url, toJson(jsonWriter, body), idempotent);
+	}
+
+	private String executeJsonHttpRequest(MethodType methodType, String url, String body, boolean idempotent) {
 
 		try {
-			return getJiraApplicationLinkRequestFactory().createRequest(methodType, url)
+			return execute(methodType, url, idempotent, () -> getJiraApplicationLinkRequestFactory().createRequest(methodType, url)
 					.setHeader("Content-Type", "application/json")
-					.setRequestBody(body).execute();
+					.setRequestBody(body).execute());
 		} catch (CredentialsRequiredException | ResponseException e) {
-			throw new JiraServiceException("Failed to create request " + methodType + " " + url + " " + body, e);
+			throw handleRequestFailure("Failed to create request " + methodType + " " + url + " " + body, e);
 		}
 	}
 
-	private String executeJsonHttpRequest(MethodType methodType, String url) {
+	private String executeJsonHttpRequest(MethodType methodType, String url, boolean idempotent) {
 
 		try {
-			return getJiraApplicationLinkRequestFactory().createRequest(methodType, url)
-					.setHeader("Content-Type", "application/json").execute();
+			return execute(methodType, url, idempotent, () -> getJiraApplicationLinkRequestFactory().createRequest(methodType, url)
+					.setHeader("Content-Type", "application/json").execute());
 		} catch (CredentialsRequiredException | ResponseException e) {
-			throw new JiraServiceException("Failed to create request " + methodType + " " + url, e);
+			throw handleRequestFailure("Failed to create request " + methodType + " " + url, e);
+		}
+	}
+
+	/**
+	 * @param idempotent whether sending the request again changes nothing, only such requests are retried: reads,
+	 *                   searches and updates, adding a fix version that an issue already has or releasing a released
+	 *                   version changes nothing
+	 */
+	private <T> T execute(MethodType methodType, String url, boolean idempotent, RetryPolicy.Attempt<T> request)
+			throws CredentialsRequiredException, ResponseException {
+
+		CircuitBreaker circuitBreaker = getCircuitBreaker();
+		CircuitBreaker.Permit permit = circuitBreaker.tryAcquire().orElseThrow(
+				() -> new JiraServiceException("JIRA is unavailable, rejected request " + methodType + " " + url, true));
+
+		try {
+			T response = idempotent ? retryPolicy.execute(methodType + " " + url, request) : request.run();
+			circuitBreaker.onSuccess(permit);
+			return response;
+		} catch (ResponseException e) {
+			if (RetryPolicy.isTemporaryFailure(e)) {
+				circuitBreaker.onFailure(permit);
+			} else {
+				circuitBreaker.onSuccess(permit);
+			}
+			throw e;
+		} catch (CredentialsRequiredException | RuntimeException e) {
+			circuitBreaker.onIgnored(permit);
+			throw e;
 		}
 	}
 
-	private String toJson(Object value) {
+	/**
+	 * @return false while JIRA is considered unavailable and requests to it are rejected
+	 */
+	boolean isAvailable() {
+
+		return !getCircuitBreaker().isOpen();
+	}
+
+	private CircuitBreaker getCircuitBreaker() {
+
+		ApplicationLink applicationLink = getJiraApplicationLink();
+		return circuitBreakers.computeIfAbsent(applicationLink.getId(),
+		                                       id -> CircuitBreaker.fromSystemProperties(applicationLink.getName()));
+	}
+
+	private String toJson(ObjectWriter writer, Object value) {
 		try {
-			return objectMapper.writeValueAsString(value);
+			return writer.writeValueAsString(value);
 		} catch (JsonProcessingException e) {
 			throw new JiraServiceException("Failed to write to json " + value, e);
 		}
 	}
 
-	private <T> T toObject(String json, Class<T> objectClass) {
+	private JsonNode toJsonNode(String json) {
+		try {
+			return jsonReader.readTree(json);
+		} catch (IOException e) {
+			throw new JiraServiceException("Failed to deserialize " + json, e);
+		}
+	}
+
+	private SerializedVersion toVersion(JsonNode json) {
+		try {
+			return versionReader.readValue(json);
+		} catch (IOException e) {
+			throw new JiraServiceException("Failed to deserialize " + json + " to " + SerializedVersion.class, e);
+		}
+	}
+
+	private SerializedVersion toVersion(String json) {
 		try {
-			return objectMapper.readValue(json, objectClass);
+			return versionReader.readValue(json);
 		} catch (IOException e) {
-			throw new JiraServiceException("Failed to deserialize " + json + " to " + objectClass, e);
+			throw new JiraServiceException("Failed to deserialize " + json + " to " + SerializedVersion.class, e);
 		}
 	}
 }
@@ -15,9 +15,56 @@
  */
 package com.infobip.jira;
 
+import com.atlassian.applinks.api.CredentialsRequiredException;
+import com.atlassian.sal.api.net.ResponseException;
+import com.atlassian.sal.api.net.ResponseStatusException;
+
+import java.io.IOException;
+
 public class JiraServiceException extends RuntimeException {
 
+    private final boolean temporary;
+
+    JiraServiceException(String message) {
+        this(message, false);
+    }
+
+    JiraServiceException(String message, boolean temporary) {
+        super(message);
+        this.temporary = temporary;
+    }
+
     JiraServiceException(String message, Throwable cause) {
         super(message, cause);
+        this.temporary = isTemporary(cause);
+    }
+
+    /**
+     * @return true if the request may succeed later: JIRA could not be reached, was overloaded, failed with a server
+     * error or was considered unavailable, or the user has yet to authorize the application link. Other failures, for
+     * example a rejected request or a missing issue, fail again when repeated.
+     */
+    public boolean isTemporary() {
+        return temporary;
+    }
+
+    private static boolean isTemporary(Throwable cause) {
+
+        if (cause instanceof JiraServiceException) {
+            return ((JiraServiceException) cause).isTemporary();
+        }
+
+        if (cause instanceof ResponseStatusException) {
+            int statusCode = ((ResponseStatusException) cause).getResponse().getStatusCode();
+            return statusCode == 429 || statusCode >= 500;
+        }
+
+        if (cause instanceof ResponseException) {
+            return RetryPolicy.isTemporaryFailure((ResponseException) cause);
+        }
+
+        return cause instanceof IOException
+               || cause instanceof InterruptedException
+               || cause instanceof CredentialsRequiredException;
     }
 }
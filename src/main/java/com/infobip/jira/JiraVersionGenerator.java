@@ -20,86 +20,123 @@ import com.atlassian.bitbucket.commit.Commit;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
 
 import static java.util.Objects.requireNonNull;
 
 public class JiraVersionGenerator {
 
-    private final JiraService jiraService;
+    private final ReleaseOutbox releaseOutbox;
     private final Commit releaseCommit;
     private final Iterator<Commit> commitIterator;
     private final CommitMessageVersionExtractor commitMessageVersionExtractor;
     private final Clock clock;
+    private final Executor jiraRequestExecutor;
 
-    public JiraVersionGenerator(JiraService jiraService,
+    /**
+     * @param jiraRequestExecutor runs JIRA requests that are sent concurrently, tasks must be executed as the user
+     *                            that generates the version
+     */
+    public JiraVersionGenerator(ReleaseOutbox releaseOutbox,
                                 Commit releaseCommit,
                                 Iterator<Commit> commitIterator,
                                 CommitMessageVersionExtractor commitMessageVersionExtractor,
-                                Clock clock) {
+                                Clock clock,
+                                Executor jiraRequestExecutor) {
 
         this.releaseCommit = releaseCommit;
 
-        this.jiraService = requireNonNull(jiraService);
+        this.releaseOutbox = requireNonNull(releaseOutbox);
         this.commitIterator = requireNonNull(commitIterator);
         this.commitMessageVersionExtractor = requireNonNull(commitMessageVersionExtractor);
         this.clock = clock;
+        this.jiraRequestExecutor = requireNonNull(jiraRequestExecutor);
+    }
+
+    public Optional<String> getReleaseVersionName() {
+
+        return commitMessageVersionExtractor.extractVersionName(releaseCommit.getMessage());
+    }
+
+    public String getReleaseCommitId() {
+
+        return releaseCommit.getId();
     }
 
     public void generate(String jiraVersionPrefix,
                          ProjectKey projectKey) {
 
-        if (!commitIterator.hasNext()) {
-            return;
-        }
+        generate(jiraVersionPrefix, Collections.singletonList(projectKey));
+    }
+
+    /**
+     * Version is always generated in the first project, other projects get the version only if commits of the release
+     * reference their issues.
+     */
+    public void generate(String jiraVersionPrefix,
+                         List<ProjectKey> projectKeys) {
+
+        generate(jiraVersionPrefix, projectKeys, IssueKeyScanner.of(projectKeys));
+    }
+
+    /**
+     * A release without commits since the previous release still gets its version, released without issues.
+     *
+     * @param issueKeyScanner scanner of {@code projectKeys}
+     */
+    public void generate(String jiraVersionPrefix,
+                         List<ProjectKey> projectKeys,
+                         IssueKeyScanner issueKeyScanner) {
 
-        commitMessageVersionExtractor.extractVersionName(releaseCommit.getMessage())
-                .ifPresent(versionName -> generate(jiraVersionPrefix, projectKey, versionName));
+        getReleaseVersionName().ifPresent(
+                versionName -> generate(jiraVersionPrefix, projectKeys, issueKeyScanner, versionName));
 
     }
 
     private void generate(String jiraVersionPrefix,
-                          ProjectKey projectKey,
+                          List<ProjectKey> projectKeys,
+                          IssueKeyScanner issueKeyScanner,
                           String versionName) {
 
         String prefixedVersionName = jiraVersionPrefix + versionName;
         List<Commit> versionCommits = getAllCommitsNewerThanPreviousRelease();
-
-        SerializedVersion version = jiraService.findVersion(projectKey, prefixedVersionName)
-                .orElseGet(() -> createNewVersion(projectKey, prefixedVersionName));
-
-        List<IssueKey> issuesSolvedInVersion = getIssueKeys(versionCommits, projectKey);
-        jiraService.addVersionToIssues(version.getName(), projectKey, issuesSolvedInVersion);
         LocalDate releaseDate = releaseCommit.getAuthorTimestamp().toInstant().atZone(clock.getZone()).toLocalDate();
-        jiraService.releaseVersion(version, releaseDate);
-    }
 
-    private SerializedVersion createNewVersion(ProjectKey projectKey, String prefixedVersionName) {
-        SerializedVersion version = new SerializedVersion(null, prefixedVersionName, projectKey.getValue(), null, false);
-        return jiraService.createJiraVersion(version);
+        getIssueKeys(versionCommits, projectKeys, issueKeyScanner).forEach(
+                (projectKey, issuesSolvedInVersion) -> releaseOutbox.submit(projectKey,
+                                                                            prefixedVersionName,
+                                                                            releaseDate,
+                                                                            issuesSolvedInVersion,
+                                                                            jiraRequestExecutor));
     }
 
-    private List<IssueKey> getIssueKeys(List<Commit> versionCommits, ProjectKey projectKey) {
+    /**
+     * @return distinct issue keys grouped by project, in order of first occurrence
+     */
+    private Map<ProjectKey, List<IssueKey>> getIssueKeys(List<Commit> versionCommits,
+                                                         List<ProjectKey> projectKeys,
+                                                         IssueKeyScanner issueKeyScanner) {
 
-        return versionCommits.stream()
-                .flatMap(commit -> getIssueKeys(commit, projectKey).stream())
-                .collect(Collectors.toList());
-    }
+        Map<ProjectKey, IssueIdSet> issueIds = new LinkedHashMap<>();
+        issueIds.put(projectKeys.get(0), new IssueIdSet());
+
+        for (Commit commit : versionCommits) {
+            String message = commit.getMessage();
+
+            if (message != null) {
+                issueKeyScanner.scan(message, issueKey -> issueIds
+                        .computeIfAbsent(issueKey.getProjectKey(), key -> new IssueIdSet())
+                        .add(Long.parseLong(issueKey.getIssueId().getValue())));
+            }
+        }
 
-    private List<IssueKey> getIssueKeys(Commit commit, ProjectKey projectKey) {
-
-        return Optional.ofNullable(commit.getMessage())
-                .map(message -> {
-                    Pattern pattern = Pattern.compile(projectKey.getValue() + "-([0-9]+)");
-                    Matcher matcher = pattern.matcher(message);
-                    List<IssueKey> issueKeys = new ArrayList<>();
-                    while (matcher.find()) {
-                        issueKeys.add(new IssueKey(projectKey, new IssueId(matcher.group(1))));
-                    }
-                    return issueKeys;
-                }).orElse(Collections.emptyList());
+        Map<ProjectKey, List<IssueKey>> issueKeysByProject = new LinkedHashMap<>();
+        issueIds.forEach((projectKey, projectIssueIds) -> {
+            List<IssueKey> issueKeys = new ArrayList<>(projectIssueIds.size());
+            projectIssueIds.forEach(id -> issueKeys.add(new IssueKey(projectKey, new IssueId(Long.toString(id)))));
+            issueKeysByProject.put(projectKey, issueKeys);
+        });
+        return issueKeysByProject;
     }
 
     private List<Commit> getAllCommitsNewerThanPreviousRelease() {
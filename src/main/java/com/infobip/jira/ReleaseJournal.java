@@ -0,0 +1,369 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.atlassian.bitbucket.server.StorageService;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.infobip.infrastructure.ObjectMapperFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Append-only journal of release plans, one JSON entry per line. A plan is written before it is run and its steps are
+ * appended as they succeed, so plans that were interrupted by a failure or a restart can be run again from the step
+ * where they stopped. Finished plans are dropped from memory; the file is truncated once no plan is pending and is
+ * rewritten with pending plans only when it is loaded and by {@link #compact()}.
+ */
+public class ReleaseJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReleaseJournal.class);
+
+    private static final String FILE_NAME = "release-journal.jsonl";
+
+    private final Path file;
+    private final ObjectReader entryReader;
+    private final ObjectWriter entryWriter;
+    private final Map<String, PendingRelease> pendingReleases;
+
+    private boolean isLoaded;
+    private int entriesSinceCompaction;
+
+    public ReleaseJournal(StorageService storageService) {
+
+        this(storageService.getHomeDir().resolve("data").resolve("jira-version-generator"));
+    }
+
+    ReleaseJournal(Path directory) {
+
+        this.file = directory.resolve(FILE_NAME);
+        this.entryReader = ObjectMapperFactory.getReader().forType(ReleaseJournalEntry.class);
+        this.entryWriter = ObjectMapperFactory.getWriter().forType(ReleaseJournalEntry.class);
+        this.pendingReleases = new LinkedHashMap<>();
+    }
+
+    synchronized void append(ReleasePlan plan) {
+
+        load();
+        write(new ReleaseJournalEntry(ReleaseJournalEntry.Type.PLANNED, plan.getId(), plan, null));
+        pendingReleases.put(plan.getId(), new PendingRelease(plan));
+    }
+
+    synchronized void markIssuesLinked(String planId, Collection<String> issueKeys) {
+
+        load();
+        PendingRelease pendingRelease = pendingReleases.get(planId);
+
+        if (pendingRelease == null || issueKeys.isEmpty()) {
+            return;
+        }
+
+        write(new ReleaseJournalEntry(ReleaseJournalEntry.Type.ISSUES_LINKED, planId, null, new ArrayList<>(issueKeys)));
+        pendingRelease.linkedIssueKeys.addAll(issueKeys);
+        removeIfFinished(pendingRelease);
+    }
+
+    /**
+     * Records issues that can't be linked to the version, for example because they were deleted, so that they are not
+     * tried again.
+     */
+    synchronized void markIssuesDropped(String planId, Collection<String> issueKeys) {
+
+        load();
+        PendingRelease pendingRelease = pendingReleases.get(planId);
+
+        if (pendingRelease == null || issueKeys.isEmpty()) {
+            return;
+        }
+
+        write(new ReleaseJournalEntry(ReleaseJournalEntry.Type.ISSUES_DROPPED, planId, null, new ArrayList<>(issueKeys)));
+        pendingRelease.droppedIssueKeys.addAll(issueKeys);
+        removeIfFinished(pendingRelease);
+    }
+
+    synchronized void markReleased(String planId) {
+
+        load();
+        PendingRelease pendingRelease = pendingReleases.get(planId);
+
+        if (pendingRelease == null) {
+            return;
+        }
+
+        write(new ReleaseJournalEntry(ReleaseJournalEntry.Type.RELEASED, planId, null, null));
+        pendingRelease.isReleased = true;
+        removeIfFinished(pendingRelease);
+    }
+
+    synchronized void markAbandoned(String planId) {
+
+        load();
+
+        if (pendingReleases.containsKey(planId)) {
+            write(new ReleaseJournalEntry(ReleaseJournalEntry.Type.ABANDONED, planId, null, null));
+            remove(planId);
+        }
+    }
+
+    /**
+     * Moves the plan behind other pending plans so that a plan that keeps failing does not hold up the rest.
+     */
+    synchronized void postpone(String planId) {
+
+        PendingRelease pendingRelease = pendingReleases.remove(planId);
+
+        if (pendingRelease != null) {
+            pendingReleases.put(planId, pendingRelease);
+        }
+    }
+
+    /**
+     * Rewrites the file with pending plans only if entries were appended since it was last rewritten, so the file
+     * doesn't grow without bound while some plans stay pending.
+     */
+    synchronized void compact() {
+
+        load();
+
+        if (entriesSinceCompaction == 0) {
+            return;
+        }
+
+        try {
+            rewrite();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact " + file, e);
+        }
+    }
+
+    synchronized Optional<PendingRelease> get(String planId) {
+
+        load();
+        return Optional.ofNullable(pendingReleases.get(planId)).map(PendingRelease::copy);
+    }
+
+    /**
+     * @return pending plans in the order they should be run
+     */
+    synchronized List<PendingRelease> getPending() {
+
+        load();
+        List<PendingRelease> pending = new ArrayList<>();
+        pendingReleases.values().forEach(pendingRelease -> pending.add(pendingRelease.copy()));
+        return pending;
+    }
+
+    private void removeIfFinished(PendingRelease pendingRelease) {
+
+        if (pendingRelease.isReleased && pendingRelease.getRemainingIssueKeys().isEmpty()) {
+            remove(pendingRelease.plan.getId());
+        }
+    }
+
+    private void remove(String planId) {
+
+        pendingReleases.remove(planId);
+
+        if (pendingReleases.isEmpty()) {
+            try {
+                Files.write(file, new byte[0], StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DSYNC);
+                entriesSinceCompaction = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to truncate " + file, e);
+            }
+        }
+    }
+
+    private void write(ReleaseJournalEntry entry) {
+
+        try {
+            byte[] line = (entryWriter.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            entriesSinceCompaction++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + file, e);
+        }
+    }
+
+    private void load() {
+
+        if (isLoaded) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+
+            if (Files.exists(file)) {
+                read(Files.readAllLines(file, StandardCharsets.UTF_8));
+                rewrite();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load " + file, e);
+        }
+
+        isLoaded = true;
+
+        if (!pendingReleases.isEmpty()) {
+            logger.info("Loaded {} pending JIRA release plans from {}", pendingReleases.size(), file);
+        }
+    }
+
+    private void read(List<String> lines) {
+
+        for (int i = 0; i < lines.size(); i++) {
+            ReleaseJournalEntry entry;
+
+            try {
+                entry = entryReader.readValue(lines.get(i));
+            } catch (IOException e) {
+                // last line may have been cut short by a crash
+                if (i < lines.size() - 1) {
+                    logger.warn("Skipping unreadable line " + (i + 1) + " of " + file, e);
+                }
+                continue;
+            }
+
+            apply(entry);
+        }
+    }
+
+    private void apply(ReleaseJournalEntry entry) {
+
+        if (entry.getType() == ReleaseJournalEntry.Type.PLANNED) {
+            pendingReleases.put(entry.getPlanId(), new PendingRelease(entry.getPlan()));
+            return;
+        }
+
+        PendingRelease pendingRelease = pendingReleases.get(entry.getPlanId());
+
+        if (pendingRelease == null) {
+            return;
+        }
+
+        switch (entry.getType()) {
+            case ISSUES_LINKED:
+                pendingRelease.linkedIssueKeys.addAll(entry.getIssueKeys());
+                break;
+            case ISSUES_DROPPED:
+                pendingRelease.droppedIssueKeys.addAll(entry.getIssueKeys());
+                break;
+            case RELEASED:
+                pendingRelease.isReleased = true;
+                break;
+            case ABANDONED:
+                pendingReleases.remove(entry.getPlanId());
+                return;
+        }
+
+        if (pendingRelease.isReleased && pendingRelease.getRemainingIssueKeys().isEmpty()) {
+            pendingReleases.remove(entry.getPlanId());
+        }
+    }
+
+    private void rewrite() throws IOException {
+
+        StringBuilder lines = new StringBuilder();
+
+        for (PendingRelease pendingRelease : pendingReleases.values()) {
+            String planId = pendingRelease.plan.getId();
+            lines.append(toLine(new ReleaseJournalEntry(ReleaseJournalEntry.Type.PLANNED,
+                                                        planId,
+                                                        pendingRelease.plan,
+                                                        null)));
+
+            if (!pendingRelease.linkedIssueKeys.isEmpty()) {
+                lines.append(toLine(new ReleaseJournalEntry(ReleaseJournalEntry.Type.ISSUES_LINKED,
+                                                            planId,
+                                                            null,
+                                                            new ArrayList<>(pendingRelease.linkedIssueKeys))));
+            }
+
+            if (!pendingRelease.droppedIssueKeys.isEmpty()) {
+                lines.append(toLine(new ReleaseJournalEntry(ReleaseJournalEntry.Type.ISSUES_DROPPED,
+                                                            planId,
+                                                            null,
+                                                            new ArrayList<>(pendingRelease.droppedIssueKeys))));
+            }
+
+            if (pendingRelease.isReleased) {
+                lines.append(toLine(new ReleaseJournalEntry(ReleaseJournalEntry.Type.RELEASED, planId, null, null)));
+            }
+        }
+
+        Path compactedFile = file.resolveSibling(FILE_NAME + ".tmp");
+        Files.write(compactedFile, lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DSYNC);
+        Files.move(compactedFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        entriesSinceCompaction = 0;
+    }
+
+    private String toLine(ReleaseJournalEntry entry) throws IOException {
+
+        return entryWriter.writeValueAsString(entry) + "\n";
+    }
+
+    static class PendingRelease {
+
+        private final ReleasePlan plan;
+        private final Set<String> linkedIssueKeys;
+        private final Set<String> droppedIssueKeys;
+        private boolean isReleased;
+
+        private PendingRelease(ReleasePlan plan) {
+
+            this.plan = plan;
+            this.linkedIssueKeys = new HashSet<>();
+            this.droppedIssueKeys = new HashSet<>();
+        }
+
+        private PendingRelease copy() {
+
+            PendingRelease copy = new PendingRelease(plan);
+            copy.linkedIssueKeys.addAll(linkedIssueKeys);
+            copy.droppedIssueKeys.addAll(droppedIssueKeys);
+            copy.isReleased = isReleased;
+            return copy;
+        }
+
+        ReleasePlan getPlan() {
+
+            return plan;
+        }
+
+        boolean isReleased() {
+
+            return isReleased;
+        }
+
+        /**
+         * @return issue keys of the plan that are neither linked to the version nor dropped yet, in plan order
+         */
+        List<String> getRemainingIssueKeys() {
+
+            List<String> remainingIssueKeys = new ArrayList<>(plan.getIssueKeys());
+            remainingIssueKeys.removeAll(linkedIssueKeys);
+            remainingIssueKeys.removeAll(droppedIssueKeys);
+            return remainingIssueKeys;
+        }
+    }
+}
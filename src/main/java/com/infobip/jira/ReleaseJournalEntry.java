@@ -0,0 +1,47 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Line of {@link ReleaseJournal}. Plan is set only on {@link Type#PLANNED} entries and issue keys only on
+ * {@link Type#ISSUES_LINKED} and {@link Type#ISSUES_DROPPED} entries.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+class ReleaseJournalEntry {
+
+    enum Type {
+        PLANNED, ISSUES_LINKED, ISSUES_DROPPED, RELEASED, ABANDONED
+    }
+
+    private final Type type;
+    private final String planId;
+    private final ReleasePlan plan;
+    private final List<String> issueKeys;
+
+    ReleaseJournalEntry(Type type, String planId, @Nullable ReleasePlan plan, @Nullable List<String> issueKeys) {
+        this.type = type;
+        this.planId = planId;
+        this.plan = plan;
+        this.issueKeys = issueKeys;
+    }
+}
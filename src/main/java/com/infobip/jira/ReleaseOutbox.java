@@ -0,0 +1,230 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.atlassian.bitbucket.auth.AuthenticationContext;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import com.infobip.infrastructure.ClockFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs JIRA operations of releases through {@link ReleaseJournal}. A plan is journaled before it is run, if running it
+ * fails temporarily (see {@link JiraServiceException#isTemporary()}) or some of its issues could not be updated for
+ * such a reason the plan stays pending and is run again by {@link #drain}. Issues that fail for any other reason are
+ * dropped from the plan and a plan whose version can't be created or released for such a reason is abandoned, since
+ * repeating the requests would fail again. Plans that are still pending after the maximum age are abandoned.
+ */
+public class ReleaseOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReleaseOutbox.class);
+
+    private static final Duration MAX_PLAN_AGE = Duration.ofHours(Long.getLong(
+            "jira-version-generator.outbox-max-age-hours", 168));
+
+    private final JiraService jiraService;
+    private final ReleaseJournal releaseJournal;
+    private final AuthenticationContext authenticationContext;
+    private final Clock clock;
+    private final Set<String> runningPlanIds;
+
+    public ReleaseOutbox(JiraService jiraService,
+                         ReleaseJournal releaseJournal,
+                         AuthenticationContext authenticationContext) {
+
+        this(jiraService, releaseJournal, authenticationContext, ClockFactory.getInstance());
+    }
+
+    ReleaseOutbox(JiraService jiraService,
+                  ReleaseJournal releaseJournal,
+                  AuthenticationContext authenticationContext,
+                  Clock clock) {
+
+        this.jiraService = jiraService;
+        this.releaseJournal = releaseJournal;
+        this.authenticationContext = authenticationContext;
+        this.clock = clock;
+        this.runningPlanIds = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Journals the plan and runs it on the calling thread as the current user. Failures of JIRA requests are logged,
+     * the plan is then left to {@link #drain}.
+     *
+     * @param jiraRequestExecutor runs JIRA requests that are sent concurrently
+     */
+    void submit(ProjectKey projectKey,
+                String versionName,
+                LocalDate releaseDate,
+                List<IssueKey> issueKeys,
+                Executor jiraRequestExecutor) {
+
+        ReleasePlan plan = new ReleasePlan(UUID.randomUUID().toString(),
+                                           clock.instant(),
+                                           getUserId(authenticationContext.getCurrentUser()),
+                                           projectKey.getValue(),
+                                           versionName,
+                                           releaseDate,
+                                           issueKeys.stream().map(IssueKey::toString).collect(Collectors.toList()));
+        releaseJournal.append(plan);
+        runPlan(plan.getId(), jiraRequestExecutor);
+    }
+
+    /**
+     * Runs at most {@code maxPlans} pending plans, one at a time, and compacts the journal. Nothing is run while JIRA
+     * is unavailable.
+     *
+     * @param runAsUser runs the plan as the user (id, null if anonymous) that pushed the release
+     * @return number of plans that were run
+     */
+    public int drain(int maxPlans, BiConsumer<Integer, Runnable> runAsUser) {
+
+        if (!jiraService.isAvailable()) {
+            return 0;
+        }
+
+        int count = 0;
+
+        for (ReleaseJournal.PendingRelease pendingRelease : releaseJournal.getPending()) {
+            if (count >= maxPlans) {
+                break;
+            }
+
+            ReleasePlan plan = pendingRelease.getPlan();
+
+            if (plan.getCreatedAt().plus(MAX_PLAN_AGE).isBefore(clock.instant())) {
+                logger.error("Abandoning JIRA release of version {} in {}, issues {} were not linked",
+                             plan.getVersionName(),
+                             plan.getProjectKey(),
+                             pendingRelease.getRemainingIssueKeys());
+                releaseJournal.markAbandoned(plan.getId());
+                continue;
+            }
+
+            count++;
+            runAsUser.accept(plan.getUserId(), () -> runPlan(plan.getId(), Runnable::run));
+        }
+
+        releaseJournal.compact();
+        return count;
+    }
+
+    private void runPlan(String planId, Executor jiraRequestExecutor) {
+
+        if (!runningPlanIds.add(planId)) {
+            return;
+        }
+
+        try {
+            releaseJournal.get(planId).ifPresent(pendingRelease -> run(pendingRelease, jiraRequestExecutor));
+        } catch (JiraServiceException e) {
+            if (e.isTemporary()) {
+                logger.warn("Failed to run JIRA release plan " + planId + ", it will be retried", e);
+                releaseJournal.postpone(planId);
+            } else {
+                logger.error("Failed to run JIRA release plan " + planId + ", it is abandoned", e);
+                releaseJournal.markAbandoned(planId);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to run JIRA release plan " + planId + ", it will be retried", e);
+            releaseJournal.postpone(planId);
+        } finally {
+            runningPlanIds.remove(planId);
+        }
+    }
+
+    private void run(ReleaseJournal.PendingRelease pendingRelease, Executor jiraRequestExecutor) {
+
+        ReleasePlan plan = pendingRelease.getPlan();
+        ProjectKey projectKey = new ProjectKey(plan.getProjectKey());
+        SerializedVersion version = jiraService.findVersion(projectKey, plan.getVersionName())
+                                               .orElseGet(() -> createNewVersion(projectKey, plan.getVersionName()));
+        List<IssueKey> remainingIssueKeys = pendingRelease.getRemainingIssueKeys()
+                                                          .stream()
+                                                          .map(ReleaseOutbox::toIssueKey)
+                                                          .collect(Collectors.toList());
+
+        if (!remainingIssueKeys.isEmpty()) {
+            IssueUpdateResult result = jiraService.addVersionToIssues(version.getName(),
+                                                                      projectKey,
+                                                                      remainingIssueKeys,
+                                                                      jiraRequestExecutor);
+            logger.info("Linked {} issues to version {}, skipped {} in {} ms",
+                        result.getUpdated().size(),
+                        version.getName(),
+                        result.getSkipped().size(),
+                        result.getDuration().toMillis());
+            List<String> droppedIssueKeys = new ArrayList<>();
+            result.getFailed().forEach((issueKey, e) -> {
+                if (e.isTemporary()) {
+                    logger.warn("Failed to link issue " + issueKey + " to version " + version.getName() +
+                                ", it will be retried", e);
+                } else {
+                    logger.error("Failed to link issue " + issueKey + " to version " + version.getName(), e);
+                    droppedIssueKeys.add(issueKey.toString());
+                }
+            });
+            List<String> linkedIssueKeys = remainingIssueKeys.stream()
+                                                             .filter(issueKey -> !result.getFailed().containsKey(issueKey))
+                                                             .map(IssueKey::toString)
+                                                             .collect(Collectors.toList());
+            releaseJournal.markIssuesLinked(plan.getId(), linkedIssueKeys);
+            releaseJournal.markIssuesDropped(plan.getId(), droppedIssueKeys);
+        }
+
+        if (!pendingRelease.isReleased()) {
+            jiraService.releaseVersion(version, plan.getReleaseDate());
+            releaseJournal.markReleased(plan.getId());
+        }
+
+        if (releaseJournal.get(plan.getId()).isPresent()) {
+            releaseJournal.postpone(plan.getId());
+        }
+    }
+
+    private SerializedVersion createNewVersion(ProjectKey projectKey, String versionName) {
+
+        SerializedVersion version = new SerializedVersion(null, versionName, projectKey.getValue(), null, false);
+
+        try {
+            return jiraService.createJiraVersion(version);
+        } catch (JiraServiceException e) {
+            // most likely the version was created in the meantime, creating it again would keep failing
+            return jiraService.findVersion(projectKey, versionName).orElseThrow(() -> e);
+        }
+    }
+
+    private static IssueKey toIssueKey(String issueKey) {
+
+        int separatorIndex = issueKey.lastIndexOf('-');
+        return new IssueKey(new ProjectKey(issueKey.substring(0, separatorIndex)),
+                            new IssueId(issueKey.substring(separatorIndex + 1)));
+    }
+
+    @Nullable
+    private static Integer getUserId(@Nullable ApplicationUser user) {
+
+        return user == null ? null : user.getId();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import lombok.Value;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * JIRA operations of a release of one project: find or create the version, add it to fix versions of the issues and
+ * release it. Plans are written to {@link ReleaseJournal} before they are run.
+ */
+@Value
+class ReleasePlan {
+
+    private final String id;
+    private final Instant createdAt;
+    private final Integer userId;
+    private final String projectKey;
+    private final String versionName;
+    private final LocalDate releaseDate;
+    private final List<String> issueKeys;
+
+    ReleasePlan(String id,
+                Instant createdAt,
+                @Nullable Integer userId,
+                String projectKey,
+                String versionName,
+                LocalDate releaseDate,
+                List<String> issueKeys) {
+        this.id = id;
+        this.createdAt = createdAt;
+        this.userId = userId;
+        this.projectKey = projectKey;
+        this.versionName = versionName;
+        this.releaseDate = releaseDate;
+        this.issueKeys = issueKeys;
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import java.util.regex.Pattern;
+
+/**
+ * Finds the longest literal that every match of a regular expression has to contain, so that input which doesn't
+ * contain it can be rejected with {@link String#indexOf(String)} instead of running the regular expression. Only
+ * literals outside of groups are considered and anything the parser doesn't understand ends the current literal, so
+ * the result may be shorter than the real required literal but it is never wrong.
+ */
+final class RequiredLiteral {
+
+    private RequiredLiteral() {
+    }
+
+    /**
+     * @return longest literal contained in every match, empty if there is none or the pattern uses flags
+     */
+    static String of(Pattern pattern) {
+
+        if (pattern.flags() != 0) {
+            return "";
+        }
+
+        String regex = pattern.pattern();
+        String longest = "";
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= regex.length()) {
+                        return "";
+                    }
+
+                    char escaped = regex.charAt(i + 1);
+
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        end = end < 0 ? regex.length() : end;
+                        current.append(regex, i + 2, end);
+                        i = end + 2;
+                        continue;
+                    }
+
+                    if (Character.isLetterOrDigit(escaped)) {
+                        // character class, back reference or character given by code, none of them is a literal
+                        longest = longer(longest, current);
+                        current.setLength(0);
+                    } else {
+                        current.append(escaped);
+                    }
+
+                    i = skipEscape(regex, i);
+                    continue;
+                case '(':
+                    if (regex.startsWith("(?", i) && i + 2 < regex.length() && isFlag(regex.charAt(i + 2))) {
+                        return "";
+                    }
+
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    i = skipGroup(regex, i);
+                    continue;
+                case '[':
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    i = skipCharacterClass(regex, i);
+                    continue;
+                case '|':
+                    return "";
+                case '?':
+                case '*':
+                case '{':
+                    // previous character is optional
+                    if (current.length() > 0) {
+                        current.setLength(current.length() - 1);
+                    }
+
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    i = c == '{' ? indexAfter(regex, '}', i) : i + 1;
+                    continue;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                    i++;
+                    continue;
+                default:
+                    current.append(c);
+                    i++;
+            }
+        }
+
+        return longer(longest, current);
+    }
+
+    private static boolean isFlag(char c) {
+
+        return c == '-' || Character.isLetter(c);
+    }
+
+    /**
+     * @return index after the group that starts at {@code start}
+     */
+    private static int skipGroup(String regex, int start) {
+
+        int depth = 0;
+        int i = start;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                i = skipEscape(regex, i);
+                continue;
+            }
+
+            if (c == '[') {
+                i = skipCharacterClass(regex, i);
+                continue;
+            }
+
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @return index after the character class that starts at {@code start}
+     */
+    private static int skipCharacterClass(String regex, int start) {
+
+        int depth = 0;
+        int i = start;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                i = skipEscape(regex, i);
+                continue;
+            }
+
+            if (c == '[') {
+                depth++;
+
+                // ']' right after the opening bracket (or its negation) is a literal
+                if (regex.startsWith("^]", i + 1)) {
+                    i += 2;
+                } else if (regex.startsWith("]", i + 1)) {
+                    i++;
+                }
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @return index after the escape that starts at {@code start}, including arguments of escapes such as
+     * {@code \u0065}, {@code \x{65}}, {@code \0145}, {@code \cM}, {@code \pL} or {@code \k<name>}
+     */
+    private static int skipEscape(String regex, int start) {
+
+        if (start + 1 >= regex.length()) {
+            return regex.length();
+        }
+
+        int i = start + 2;
+
+        switch (regex.charAt(start + 1)) {
+            case 'Q':
+                int end = regex.indexOf("\\E", i);
+                return end < 0 ? regex.length() : end + 2;
+            case 'u':
+                return Math.min(i + 4, regex.length());
+            case 'x':
+                return regex.startsWith("{", i) ? indexAfter(regex, '}', i) : Math.min(i + 2, regex.length());
+            case '0':
+                // octal escape has up to three digits, skipping too many only shortens the literal
+                return skipDigits(regex, i, 3);
+            case 'c':
+                return Math.min(i + 1, regex.length());
+            case 'p':
+            case 'P':
+            case 'N':
+                return regex.startsWith("{", i) ? indexAfter(regex, '}', i) : Math.min(i + 1, regex.length());
+            case 'k':
+                return indexAfter(regex, '>', i);
+            default:
+                if (Character.isDigit(regex.charAt(start + 1))) {
+                    // back reference
+                    return skipDigits(regex, i, Integer.MAX_VALUE);
+                }
+
+                return i;
+        }
+    }
+
+    private static int skipDigits(String regex, int start, int maxDigits) {
+
+        int i = start;
+
+        while (i < regex.length() && i - start < maxDigits && Character.isDigit(regex.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int indexAfter(String regex, char c, int start) {
+
+        int index = regex.indexOf(c, start);
+        return index < 0 ? regex.length() : index + 1;
+    }
+
+    private static String longer(String longest, StringBuilder current) {
+
+        return current.length() > longest.length() ? current.toString() : longest;
+    }
+}
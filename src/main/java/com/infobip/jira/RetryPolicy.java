@@ -0,0 +1,217 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.atlassian.applinks.api.CredentialsRequiredException;
+import com.atlassian.sal.api.net.ResponseException;
+import com.atlassian.sal.api.net.ResponseStatusException;
+import com.atlassian.sal.api.net.ResponseTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Retries JIRA requests that failed with a transport error or with a status that signals a temporary condition (429,
+ * 502, 503 and 504). Backoff between attempts grows exponentially up to a maximum and only its upper half is random,
+ * so concurrent requests spread out without retrying immediately. A Retry-After header of the response replaces the
+ * backoff. Attempts stop when their count or the total time budget is exhausted, a retry that would end after the
+ * budget is not made.
+ */
+class RetryPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration budget;
+    private final Sleeper sleeper;
+    private final LongSupplier nanoTime;
+    private final Clock clock;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    static RetryPolicy fromSystemProperties() {
+
+        return new RetryPolicy(Math.max(1, Integer.getInteger("jira-version-generator.retry-max-attempts", 4)),
+                               Duration.ofMillis(Long.getLong("jira-version-generator.retry-initial-backoff-millis",
+                                                              200)),
+                               Duration.ofMillis(Long.getLong("jira-version-generator.retry-max-backoff-millis",
+                                                              5000)),
+                               Duration.ofMillis(Long.getLong("jira-version-generator.retry-budget-millis", 30000)),
+                               duration -> Thread.sleep(duration.toMillis()),
+                               System::nanoTime,
+                               Clock.systemUTC());
+    }
+
+    RetryPolicy(int maxAttempts,
+                Duration initialBackoff,
+                Duration maxBackoff,
+                Duration budget,
+                Sleeper sleeper,
+                LongSupplier nanoTime,
+                Clock clock) {
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.budget = budget;
+        this.sleeper = sleeper;
+        this.nanoTime = nanoTime;
+        this.clock = clock;
+    }
+
+    <T> T execute(String description, Attempt<T> attempt) throws CredentialsRequiredException, ResponseException {
+
+        long start = nanoTime.getAsLong();
+
+        for (int attemptCount = 1; ; attemptCount++) {
+            try {
+                return attempt.run();
+            } catch (ResponseException e) {
+                if (!isTemporaryFailure(e)) {
+                    throw e;
+                }
+
+                int retryCount = attemptCount;
+                Duration delay = getRetryAfter(e).orElseGet(() -> getBackoff(retryCount));
+                Duration elapsed = Duration.ofNanos(nanoTime.getAsLong() - start);
+
+                if (attemptCount >= maxAttempts || elapsed.plus(delay).compareTo(budget) > 0) {
+                    exhausted.increment();
+                    logger.warn("Giving up {} after {} attempts in {} ms, {} retries and {} exhausted requests so far",
+                                description,
+                                attemptCount,
+                                elapsed.toMillis(),
+                                retries.sum(),
+                                exhausted.sum());
+                    throw e;
+                }
+
+                retries.increment();
+                logger.warn("Retrying {} in {} ms after attempt {} failed: {}",
+                            description,
+                            delay.toMillis(),
+                            attemptCount,
+                            e.getMessage());
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * @return number of retries made so far
+     */
+    long getRetryCount() {
+
+        return retries.sum();
+    }
+
+    /**
+     * @return number of requests that failed after all allowed attempts
+     */
+    long getExhaustedCount() {
+
+        return exhausted.sum();
+    }
+
+    /**
+     * @return true if the request failed because JIRA was temporarily unreachable or overloaded
+     */
+    static boolean isTemporaryFailure(ResponseException e) {
+
+        if (e instanceof ResponseTransportException) {
+            return true;
+        }
+
+        if (!(e instanceof ResponseStatusException)) {
+            return false;
+        }
+
+        int statusCode = ((ResponseStatusException) e).getResponse().getStatusCode();
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    private Optional<Duration> getRetryAfter(ResponseException e) {
+
+        if (!(e instanceof ResponseStatusException)) {
+            return Optional.empty();
+        }
+
+        String retryAfter = ((ResponseStatusException) e).getResponse().getHeader("Retry-After");
+
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.trim()))));
+        } catch (NumberFormatException ignored) {
+            // not delay seconds, should be an HTTP date
+        }
+
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(clock.instant(), retryAt.toInstant());
+            return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+        } catch (DateTimeParseException ignored) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return random delay in the upper half of the exponential backoff for the given retry
+     */
+    private Duration getBackoff(int retryCount) {
+
+        long backoffMillis = initialBackoff.toMillis() << Math.min(retryCount - 1, 30);
+
+        if (backoffMillis <= 0 || backoffMillis > maxBackoff.toMillis()) {
+            backoffMillis = maxBackoff.toMillis();
+        }
+
+        long halfMillis = backoffMillis / 2;
+        return Duration.ofMillis(halfMillis + ThreadLocalRandom.current().nextLong(backoffMillis - halfMillis + 1));
+    }
+
+    private void sleep(Duration delay) throws ResponseException {
+
+        try {
+            sleeper.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    interface Attempt<T> {
+
+        T run() throws CredentialsRequiredException, ResponseException;
+    }
+
+    interface Sleeper {
+
+        void sleep(Duration duration) throws InterruptedException;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * Versions of recently used JIRA projects. Versions are looked up one name at a time, so a project entry holds the
+ * versions found so far and, once a lookup has read the whole version list, names of all versions of the project which
+ * answer lookups of missing versions. Entries expire after a fixed time and least recently used projects are evicted
+ * when the cache is full. Entries are updated with versions created and released through this plugin and invalidated
+ * when a request about their versions fails, since that usually means the entry is out of date.
+ */
+class VersionCache {
+
+    private final Cache<ProjectKey, ProjectVersions> cache;
+
+    VersionCache(Duration timeToLive, long maximumSize) {
+
+        this.cache = CacheBuilder.newBuilder()
+                                 .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS)
+                                 .maximumSize(maximumSize)
+                                 .build();
+    }
+
+    Optional<SerializedVersion> find(ProjectKey projectKey,
+                                     String name,
+                                     BiFunction<ProjectKey, String, VersionListReader.Result> versionLookup) {
+
+        ProjectVersions projectVersions = getOrCreate(projectKey);
+        SerializedVersion cachedVersion = projectVersions.versions.get(name);
+
+        if (cachedVersion != null) {
+            return Optional.of(cachedVersion);
+        }
+
+        Set<String> names = projectVersions.names;
+
+        if (names != null && !names.contains(name)) {
+            return Optional.empty();
+        }
+
+        VersionListReader.Result result = versionLookup.apply(projectKey, name);
+        result.getVersion().ifPresent(version -> projectVersions.versions.put(name, version));
+        result.getNames().ifPresent(projectVersions::setNames);
+        return result.getVersion();
+    }
+
+    private ProjectVersions getOrCreate(ProjectKey projectKey) {
+
+        ProjectVersions projectVersions = cache.getIfPresent(projectKey);
+
+        if (projectVersions == null) {
+            projectVersions = new ProjectVersions();
+            cache.put(projectKey, projectVersions);
+        }
+
+        return projectVersions;
+    }
+
+    void put(ProjectKey projectKey, SerializedVersion version) {
+
+        ProjectVersions projectVersions = cache.getIfPresent(projectKey);
+
+        if (projectVersions == null) {
+            return;
+        }
+
+        projectVersions.versions.put(version.getName(), version);
+        Set<String> names = projectVersions.names;
+
+        if (names != null) {
+            names.add(version.getName());
+        }
+    }
+
+    /**
+     * Replaces the cached version with the same id.
+     */
+    void replace(SerializedVersion version) {
+
+        for (ProjectVersions projectVersions : cache.asMap().values()) {
+            projectVersions.versions.replaceAll(
+                    (name, cached) -> Objects.equals(cached.getId(), version.getId()) ? version : cached);
+        }
+    }
+
+    void invalidate(ProjectKey projectKey) {
+
+        cache.invalidate(projectKey);
+    }
+
+    /**
+     * Invalidates projects that hold the version with given id.
+     */
+    void invalidate(SerializedVersion version) {
+
+        cache.asMap().values().removeIf(projectVersions -> projectVersions.versions
+                .values()
+                .stream()
+                .anyMatch(cached -> Objects.equals(cached.getId(), version.getId())));
+    }
+
+    private static class ProjectVersions {
+
+        private final ConcurrentMap<String, SerializedVersion> versions = new ConcurrentHashMap<>();
+
+        /**
+         * Names of all versions of the project, null until a lookup reads the whole version list.
+         */
+        private volatile Set<String> names;
+
+        private void setNames(Set<String> allNames) {
+
+            Set<String> names = ConcurrentHashMap.newKeySet();
+            names.addAll(allNames);
+            names.addAll(versions.keySet());
+            this.names = names;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Looks up a version in JSON array of project versions without binding the whole array. Array is read token by token,
+ * of each version only the fields of {@link SerializedVersion} are read and other fields are skipped, reading stops at
+ * the first version with the requested name, so the array is read from a stream and never held in memory as a whole.
+ */
+class VersionListReader {
+
+    private final JsonFactory jsonFactory;
+
+    VersionListReader(JsonFactory jsonFactory) {
+
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * @throws JsonProcessingException if the JSON is not an array of versions
+     * @throws IOException             if reading the stream fails
+     */
+    Result find(InputStream versionsJson, String name) throws IOException {
+
+        try (JsonParser parser = jsonFactory.createParser(versionsJson)) {
+
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of versions");
+            }
+
+            Set<String> names = new HashSet<>();
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String id = null;
+                String versionName = null;
+                String releaseDate = null;
+                Boolean released = null;
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+
+                    switch (field) {
+                        case "id":
+                            id = parser.getValueAsString();
+                            break;
+                        case "name":
+                            versionName = parser.getValueAsString();
+                            break;
+                        case "releaseDate":
+                            releaseDate = parser.getValueAsString();
+                            break;
+                        case "released":
+                            released = value == JsonToken.VALUE_NULL ? null : value == JsonToken.VALUE_TRUE;
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+
+                if (name.equals(versionName)) {
+                    LocalDate parsedReleaseDate = releaseDate == null ? null : LocalDate.parse(releaseDate);
+                    SerializedVersion version = new SerializedVersion(id, versionName, null, parsedReleaseDate, released);
+                    return new Result(version, null);
+                }
+
+                if (versionName != null) {
+                    names.add(versionName);
+                }
+            }
+
+            return new Result(null, names);
+        }
+    }
+
+    static class Result {
+
+        @Nullable
+        private final SerializedVersion version;
+
+        @Nullable
+        private final Set<String> names;
+
+        private Result(@Nullable SerializedVersion version, @Nullable Set<String> names) {
+            this.version = version;
+            this.names = names;
+        }
+
+        /**
+         * Result of a lookup that did not read names of all versions.
+         */
+        static Result of(Optional<SerializedVersion> version) {
+            return new Result(version.orElse(null), null);
+        }
+
+        Optional<SerializedVersion> getVersion() {
+            return Optional.ofNullable(version);
+        }
+
+        /**
+         * @return names of all versions, empty if reading stopped before the end of the array
+         */
+        Optional<Set<String>> getNames() {
+            return Optional.ofNullable(names);
+        }
+    }
+}
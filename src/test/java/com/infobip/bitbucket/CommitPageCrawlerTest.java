@@ -0,0 +1,147 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.commit.*;
+import com.atlassian.bitbucket.repository.RefChange;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.user.TestApplicationUser;
+import com.atlassian.bitbucket.util.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CommitPageCrawlerTest {
+
+    @Mock
+    private CommitService commitService;
+
+    @Mock
+    private Repository repository;
+
+    @Mock
+    private RefChange refChange;
+
+    private final List<Commit> commits = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+
+        given(refChange.getToHash()).willReturn("toHash");
+
+        for (int i = 0; i < 100; i++) {
+            commits.add(new SimpleCommit.Builder(String.valueOf(i)).author(new TestApplicationUser("")).build());
+        }
+
+        given(commitService.getCommitsBetween(any(), any())).willAnswer(invocation -> {
+            PageRequest pageRequest = (PageRequest) invocation.getArguments()[1];
+            int end = Math.min(pageRequest.getStart() + pageRequest.getLimit(), commits.size());
+            return new PageImpl<>(pageRequest, commits.subList(pageRequest.getStart(), end), end == commits.size());
+        });
+    }
+
+    @Test
+    public void shouldIterateOverAllCommitsWithGrowingPageSize() {
+
+        CommitPageCrawler crawler = CommitPageCrawler.of(commitService, repository, refChange,
+                                                         Collections.emptyList(), 20, Runnable::run);
+
+        List<Commit> actual = new ArrayList<>();
+        crawler.forEachRemaining(actual::add);
+
+        then(actual).isEqualTo(commits);
+        then(getRequestedPageLimits()).containsExactly(5, 10, 20, 20, 20, 20, 20);
+    }
+
+    @Test
+    public void shouldNotFetchNextPageWhenOnlyFirstCommitIsConsumed() {
+
+        CommitPageCrawler crawler = CommitPageCrawler.of(commitService, repository, refChange,
+                                                         Collections.emptyList(), 20, Runnable::run);
+
+        crawler.next();
+
+        BDDMockito.then(commitService).should(times(1)).getCommitsBetween(any(), any());
+    }
+
+    @Test
+    public void shouldNotFetchNextPageBeforeHalfOfCurrentPageIsConsumed() {
+
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        CommitPageCrawler crawler = CommitPageCrawler.of(commitService, repository, refChange,
+                                                         Collections.emptyList(), 20, backgroundTasks::add);
+
+        crawler.next();
+        crawler.next();
+
+        then(backgroundTasks).isEmpty();
+        BDDMockito.then(commitService).should(times(1)).getCommitsBetween(any(), any());
+    }
+
+    @Test
+    public void shouldFetchNextPageInBackgroundWhileCurrentPageIsConsumed() {
+
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        CommitPageCrawler crawler = CommitPageCrawler.of(commitService, repository, refChange,
+                                                         Collections.emptyList(), 20, backgroundTasks::add);
+
+        crawler.next();
+        crawler.next();
+        crawler.next();
+
+        then(backgroundTasks).hasSize(1);
+        backgroundTasks.get(0).run();
+        then(getRequestedPageLimits()).containsExactly(5, 10);
+    }
+
+    @Test
+    public void shouldFetchNextPageOnConsumerThreadWhenBackgroundFetchDidNotStart() {
+
+        List<Runnable> backgroundTasks = new ArrayList<>();
+        CommitPageCrawler crawler = CommitPageCrawler.of(commitService, repository, refChange,
+                                                         Collections.emptyList(), 20, backgroundTasks::add);
+
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            actual.add(crawler.next().getId());
+            crawler.hasNext();
+        }
+
+        then(actual).isEqualTo(commits.subList(0, 10).stream().map(Commit::getId).collect(Collectors.toList()));
+        then(getRequestedPageLimits()).containsExactly(5, 10);
+    }
+
+    private List<Integer> getRequestedPageLimits() {
+
+        ArgumentCaptor<PageRequest> captor = ArgumentCaptor.forClass(PageRequest.class);
+        BDDMockito.then(commitService).should(atLeastOnce()).getCommitsBetween(any(), captor.capture());
+        return captor.getAllValues().stream().map(PageRequest::getLimit).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class HookJobExecutorTest {
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+    private final List<Runnable> scheduledJobs = new ArrayList<>();
+    private final ManualDebounceScheduler debounceScheduler = new ManualDebounceScheduler();
+    private long nanoTime = 0;
+
+    @After
+    public void tearDown() {
+
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void shouldRunJobsWithSameKeyInSubmissionOrder() throws InterruptedException {
+
+        HookJobExecutor hookJobExecutor = new HookJobExecutor(workers, 100, Duration.ZERO);
+        List<Integer> executedJobs = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch allJobsExecuted = new CountDownLatch(50);
+
+        for (int i = 0; i < 50; i++) {
+            int jobNumber = i;
+            hookJobExecutor.submit("repository", () -> {
+                executedJobs.add(jobNumber);
+                allJobsExecuted.countDown();
+            });
+        }
+
+        then(allJobsExecuted.await(5, TimeUnit.SECONDS)).isTrue();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add(i);
+        }
+        then(executedJobs).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldRunJobsWithDifferentKeysConcurrently() throws InterruptedException {
+
+        HookJobExecutor hookJobExecutor = new HookJobExecutor(workers, 100, Duration.ZERO);
+        CountDownLatch secondJobStarted = new CountDownLatch(1);
+        CountDownLatch firstJobFinished = new CountDownLatch(1);
+
+        hookJobExecutor.submit("first repository", () -> {
+            try {
+                if (secondJobStarted.await(5, TimeUnit.SECONDS)) {
+                    firstJobFinished.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        hookJobExecutor.submit("second repository", secondJobStarted::countDown);
+
+        then(firstJobFinished.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldRejectJobWhenQueueIsFull() {
+
+        HookJobExecutor hookJobExecutor = new HookJobExecutor(scheduledJobs::add, 2, Duration.ZERO);
+        hookJobExecutor.submit("repository", () -> {});
+        hookJobExecutor.submit("repository", () -> {});
+
+        Throwable actual = catchThrowable(() -> hookJobExecutor.submit("repository", () -> {}));
+
+        then(actual).isInstanceOf(RejectedExecutionException.class);
+        then(hookJobExecutor.getQueueDepth()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldAcceptJobAfterQueuedJobsFinish() {
+
+        HookJobExecutor hookJobExecutor = new HookJobExecutor(scheduledJobs::add, 1, Duration.ZERO);
+        hookJobExecutor.submit("repository", () -> {});
+
+        scheduledJobs.remove(0).run();
+        hookJobExecutor.submit("repository", () -> {});
+
+        then(hookJobExecutor.getQueueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldForkJobWhenQueueIsFull() {
+
+        HookJobExecutor hookJobExecutor = new HookJobExecutor(scheduledJobs::add, 1, Duration.ZERO);
+        hookJobExecutor.submit("repository", () -> {});
+
+        hookJobExecutor.fork("version", () -> {});
+
+        then(hookJobExecutor.getQueueDepth()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRecordWaitTime() {
+
+        HookJobExecutor hookJobExecutor = givenManualHookJobExecutor(1);
+        hookJobExecutor.submit("repository", () -> {});
+
+        nanoTime += Duration.ofMillis(20).toNanos();
+        scheduledJobs.remove(0).run();
+
+        then(hookJobExecutor.getQueueDepth()).isZero();
+        then(hookJobExecutor.getMaxWaitTime()).isEqualTo(Duration.ofMillis(20));
+        then(hookJobExecutor.getAverageWaitTime()).isEqualTo(Duration.ofMillis(20));
+    }
+
+    @Test
+    public void shouldMergeDebouncedJobsWithSameDebounceKey() {
+
+        HookJobExecutor hookJobExecutor = givenManualHookJobExecutor(100);
+        List<String> executedJobs = new ArrayList<>();
+
+        for (String value : Arrays.asList("first", "second", "third")) {
+            hookJobExecutor.submitDebounced("repository",
+                                            "branch",
+                                            value,
+                                            (older, newer) -> older + "," + newer,
+                                            executedJobs::add);
+        }
+
+        then(scheduledJobs).isEmpty();
+        debounceScheduler.runScheduledTasks();
+        runScheduledJobs();
+
+        then(executedJobs).containsExactly("first,second,third");
+    }
+
+    @Test
+    public void shouldNotMergeDebouncedJobsWithDifferentDebounceKeys() {
+
+        HookJobExecutor hookJobExecutor = givenManualHookJobExecutor(100);
+        List<String> executedJobs = new ArrayList<>();
+
+        for (String value : Arrays.asList("first", "second")) {
+            hookJobExecutor.submitDebounced("repository",
+                                            value,
+                                            value,
+                                            (older, newer) -> older + "," + newer,
+                                            executedJobs::add);
+        }
+
+        debounceScheduler.runScheduledTasks();
+        runScheduledJobs();
+
+        then(executedJobs).containsExactly("first", "second");
+    }
+
+    @Test
+    public void shouldStartNewDebounceWindowAfterWaitingJobWasQueued() {
+
+        HookJobExecutor hookJobExecutor = givenManualHookJobExecutor(100);
+        List<String> executedJobs = new ArrayList<>();
+        hookJobExecutor.submitDebounced("repository", "branch", "first", (older, newer) -> older + "," + newer,
+                                        executedJobs::add);
+        debounceScheduler.runScheduledTasks();
+
+        hookJobExecutor.submitDebounced("repository", "branch", "second", (older, newer) -> older + "," + newer,
+                                        executedJobs::add);
+        debounceScheduler.runScheduledTasks();
+        runScheduledJobs();
+
+        then(executedJobs).containsExactly("first", "second");
+    }
+
+    @Test
+    public void shouldDropWaitingDebouncedJobsOnStop() {
+
+        HookJobExecutor hookJobExecutor = givenManualHookJobExecutor(100);
+        List<String> executedJobs = new ArrayList<>();
+        hookJobExecutor.submitDebounced("repository", "branch", "first", (older, newer) -> newer, executedJobs::add);
+
+        hookJobExecutor.onStop();
+        debounceScheduler.runScheduledTasks();
+        runScheduledJobs();
+
+        then(executedJobs).isEmpty();
+    }
+
+    @Test
+    public void shouldSubmitDebouncedJobImmediatelyWithoutDebounceWindow() {
+
+        HookJobExecutor hookJobExecutor = new HookJobExecutor(scheduledJobs::add, 1, Duration.ZERO);
+
+        hookJobExecutor.submitDebounced("repository", "branch", "value", (older, newer) -> newer, value -> {});
+
+        then(hookJobExecutor.getQueueDepth()).isEqualTo(1);
+        then(scheduledJobs).hasSize(1);
+    }
+
+    @Test
+    public void shouldRunNextJobWithSameKeyAfterJobThrowsError() {
+
+        HookJobExecutor hookJobExecutor = new HookJobExecutor(scheduledJobs::add, 2, Duration.ZERO);
+        List<String> executedJobs = new ArrayList<>();
+        hookJobExecutor.submit("repository", () -> {
+            throw new StackOverflowError();
+        });
+        hookJobExecutor.submit("repository", () -> executedJobs.add("second"));
+
+        Throwable actual = catchThrowable(() -> scheduledJobs.remove(0).run());
+        scheduledJobs.remove(0).run();
+
+        then(actual).isInstanceOf(StackOverflowError.class);
+        then(executedJobs).containsExactly("second");
+        then(hookJobExecutor.getQueueDepth()).isZero();
+    }
+
+    private HookJobExecutor givenManualHookJobExecutor(int queueCapacity) {
+
+        return new HookJobExecutor(scheduledJobs::add,
+                                   queueCapacity,
+                                   Duration.ZERO,
+                                   Duration.ofSeconds(2),
+                                   debounceScheduler,
+                                   () -> nanoTime);
+    }
+
+    private void runScheduledJobs() {
+
+        while (!scheduledJobs.isEmpty()) {
+            scheduledJobs.remove(0).run();
+        }
+    }
+
+    private static class ManualDebounceScheduler implements HookJobExecutor.DebounceScheduler {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable task, Duration delay) {
+
+            tasks.add(task);
+        }
+
+        @Override
+        public void shutdownNow() {
+
+            tasks.clear();
+        }
+
+        private void runScheduledTasks() {
+
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
@@ -18,11 +18,15 @@ package com.infobip.bitbucket;
 import com.atlassian.bitbucket.scope.Scope;
 import com.atlassian.bitbucket.setting.Settings;
 import com.atlassian.bitbucket.setting.SettingsValidationErrors;
+import com.infobip.jira.ProjectKey;
+import org.assertj.core.api.BDDAssertions;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.List;
+
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Matchers.anyString;
@@ -77,6 +81,36 @@ public class ProjectKeyValidatorTest {
         then(settingsValidationErrors).should(never()).addFieldError(anyString(), anyString());
     }
 
+    @Test
+    public void shouldNotAddErrorForCorrectProjectKeys() {
+
+        givenSetting("jira-project-key", "TEST, OTHER ANOTHER");
+
+        whenValidate();
+
+        then(settingsValidationErrors).should(never()).addFieldError(anyString(), anyString());
+    }
+
+    @Test
+    public void shouldAddErrorsForIncorrectProjectKeyInList() {
+
+        givenSetting("jira-project-key", "TEST,1A");
+
+        whenValidate();
+
+        then(settingsValidationErrors).should()
+                                      .addFieldError("jira-project-key",
+                                                     "Project key must match the JIRA project key format: [A-Z][A-Z0-9_]+");
+    }
+
+    @Test
+    public void shouldParseProjectKeysInOrderWithoutDuplicates() {
+
+        List<ProjectKey> actual = ProjectKeyValidator.parse(" TEST, OTHER,TEST ");
+
+        BDDAssertions.then(actual).containsExactly(new ProjectKey("TEST"), new ProjectKey("OTHER"));
+    }
+
     private void givenSetting(String key, String value) {
 
         given(settings.getString(eq(key), anyString())).willReturn(value);
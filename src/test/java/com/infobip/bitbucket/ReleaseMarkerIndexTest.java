@@ -0,0 +1,114 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMarkerIndexTest {
+
+    @Mock
+    private PluginSettingsFactory pluginSettingsFactory;
+
+    @Mock
+    private Repository repository;
+
+    private final Map<String, Object> storedSettings = new HashMap<>();
+
+    @Before
+    public void setUp() {
+
+        given(repository.getId()).willReturn(1);
+        given(pluginSettingsFactory.createGlobalSettings()).willReturn(new PluginSettings() {
+            @Override
+            public Object get(String key) {
+                return storedSettings.get(key);
+            }
+
+            @Override
+            public Object put(String key, Object value) {
+                return storedSettings.put(key, value);
+            }
+
+            @Override
+            public Object remove(String key) {
+                return storedSettings.remove(key);
+            }
+        });
+    }
+
+    @Test
+    public void shouldReturnReleaseCommitIdAfterRestart() {
+
+        new ReleaseMarkerIndex(pluginSettingsFactory).putReleaseCommitId(repository, "refs/heads/master", "abc",
+                                                                         commitId -> false);
+
+        ReleaseMarkerIndex releaseMarkerIndex = new ReleaseMarkerIndex(pluginSettingsFactory);
+
+        then(releaseMarkerIndex.getReleaseCommitId(repository, "refs/heads/master")).contains("abc");
+        then(releaseMarkerIndex.getReleaseCommitId(repository, "refs/heads/develop")).isEmpty();
+    }
+
+    @Test
+    public void shouldRemoveReleaseCommitId() {
+
+        ReleaseMarkerIndex releaseMarkerIndex = new ReleaseMarkerIndex(pluginSettingsFactory);
+        releaseMarkerIndex.putReleaseCommitId(repository, "refs/heads/master", "abc", commitId -> false);
+
+        releaseMarkerIndex.removeReleaseCommitId(repository, "refs/heads/master");
+
+        then(releaseMarkerIndex.getReleaseCommitId(repository, "refs/heads/master")).isEmpty();
+        then(new ReleaseMarkerIndex(pluginSettingsFactory).getReleaseCommitId(repository, "refs/heads/master")).isEmpty();
+        then(storedSettings).isEmpty();
+    }
+
+    @Test
+    public void shouldNotMoveMarkerBackToOlderRelease() {
+
+        ReleaseMarkerIndex releaseMarkerIndex = new ReleaseMarkerIndex(pluginSettingsFactory);
+        releaseMarkerIndex.putReleaseCommitId(repository, "refs/heads/master", "newer", commitId -> false);
+
+        releaseMarkerIndex.putReleaseCommitId(repository, "refs/heads/master", "older", "newer"::equals);
+
+        then(releaseMarkerIndex.getReleaseCommitId(repository, "refs/heads/master")).contains("newer");
+    }
+
+    @Test
+    public void shouldMoveMarkerForwardToNewerRelease() {
+
+        ReleaseMarkerIndex releaseMarkerIndex = new ReleaseMarkerIndex(pluginSettingsFactory);
+        releaseMarkerIndex.putReleaseCommitId(repository, "refs/heads/master", "older", commitId -> false);
+
+        releaseMarkerIndex.putReleaseCommitId(repository, "refs/heads/master", "newer", commitId -> false);
+
+        then(releaseMarkerIndex.getReleaseCommitId(repository, "refs/heads/master")).contains("newer");
+        then(new ReleaseMarkerIndex(pluginSettingsFactory).getReleaseCommitId(repository, "refs/heads/master"))
+                .contains("newer");
+    }
+}
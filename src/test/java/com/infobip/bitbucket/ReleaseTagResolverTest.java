@@ -0,0 +1,159 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.bitbucket;
+
+import com.atlassian.bitbucket.commit.Commit;
+import com.atlassian.bitbucket.commit.CommitService;
+import com.atlassian.bitbucket.commit.CommitsBetweenRequest;
+import com.atlassian.bitbucket.commit.SimpleCommit;
+import com.atlassian.bitbucket.repository.*;
+import com.atlassian.bitbucket.util.PageImpl;
+import com.atlassian.bitbucket.util.PageRequestImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.refEq;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseTagResolverTest {
+
+    @Mock
+    private RefService refService;
+
+    @Mock
+    private CommitService commitService;
+
+    @Mock
+    private Repository repository;
+
+    @Before
+    public void setUp() {
+
+        given(commitService.getCommitsBetween(any(), any())).willReturn(
+                new PageImpl<>(new PageRequestImpl(0, 1), Collections.<Commit>emptyList(), true));
+    }
+
+    @Test
+    public void shouldFindCommitOfLatestMatchingTag() {
+
+        givenTags(givenTag("test-project-1.0.1", "releaseCommit"),
+                  givenTag("other-project-2.0.0", "otherCommit"),
+                  givenTag("test-project-1.0.0", "previousReleaseCommit"));
+
+        Optional<String> actual = new ReleaseTagResolver(refService, commitService).findPreviousReleaseCommitId(
+                repository, Pattern.compile("test-project-.*"), "releaseCommit");
+
+        then(actual).contains("previousReleaseCommit");
+    }
+
+    @Test
+    public void shouldFilterTagsByLiteralPrefixOfPattern() {
+
+        givenTags();
+
+        new ReleaseTagResolver(refService, commitService).findPreviousReleaseCommitId(repository,
+                                                                       Pattern.compile("test-project-.*"),
+                                                                       "releaseCommit");
+
+        RepositoryTagsRequest expected = new RepositoryTagsRequest.Builder(repository)
+                .filterText("test-project-")
+                .order(RefOrder.MODIFICATION)
+                .build();
+        BDDMockito.then(refService).should().getTags(refEq(expected), any());
+    }
+
+    @Test
+    public void shouldReturnEmptyWhenNoTagMatches() {
+
+        givenTags(givenTag("other-project-2.0.0", "otherCommit"));
+
+        Optional<String> actual = new ReleaseTagResolver(refService, commitService).findPreviousReleaseCommitId(
+                repository, Pattern.compile("test-project-.*"), "releaseCommit");
+
+        then(actual).isEmpty();
+    }
+
+    @Test
+    public void shouldSkipTagsWhoseCommitIsNotAncestorOfRelease() {
+
+        givenTags(givenTag("test-project-1.0.2", "newerReleaseCommit"),
+                  givenTag("test-project-1.0.0", "previousReleaseCommit"));
+        givenNotAncestor("newerReleaseCommit", "releaseCommit");
+
+        Optional<String> actual = new ReleaseTagResolver(refService, commitService).findPreviousReleaseCommitId(
+                repository, Pattern.compile("test-project-.*"), "releaseCommit");
+
+        then(actual).contains("previousReleaseCommit");
+    }
+
+    @Test
+    public void shouldFindMatchingTagOnFollowingPage() {
+
+        given(refService.getTags(any(), any())).willReturn(
+                new PageImpl<>(new PageRequestImpl(0, 25),
+                               Collections.singletonList(givenTag("test-project-1.0.2", "newerReleaseCommit")),
+                               false),
+                new PageImpl<>(new PageRequestImpl(1, 25),
+                               Collections.singletonList(givenTag("test-project-1.0.0", "previousReleaseCommit")),
+                               true));
+        givenNotAncestor("newerReleaseCommit", "releaseCommit");
+
+        Optional<String> actual = new ReleaseTagResolver(refService, commitService).findPreviousReleaseCommitId(
+                repository, Pattern.compile("test-project-.*"), "releaseCommit");
+
+        then(actual).contains("previousReleaseCommit");
+    }
+
+    private void givenNotAncestor(String commitId, String releaseHash) {
+
+        CommitsBetweenRequest request = new CommitsBetweenRequest.Builder(repository)
+                .include(commitId)
+                .exclude(releaseHash)
+                .build();
+        given(commitService.getCommitsBetween(refEq(request), any())).willReturn(
+                new PageImpl<>(new PageRequestImpl(0, 1),
+                               Collections.<Commit>singletonList(new SimpleCommit.Builder(commitId).build()),
+                               true));
+    }
+
+    private void givenTags(Tag... tags) {
+
+        given(refService.getTags(any(), any())).willReturn(
+                new PageImpl<>(new PageRequestImpl(0, 25), Arrays.asList(tags), true));
+    }
+
+    private Tag givenTag(String name, String commitId) {
+
+        return new SimpleTag.Builder()
+                .id("refs/tags/" + name)
+                .displayId(name)
+                .latestCommit(commitId)
+                .hash(commitId)
+                .build();
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class CircuitBreakerTest {
+
+    private long nanoTime = 0;
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("test",
+                                                                     3,
+                                                                     Duration.ofSeconds(30),
+                                                                     () -> nanoTime);
+
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() {
+
+        givenFailures(2);
+        circuitBreaker.onSuccess(givenPermit());
+        givenFailures(2);
+
+        CircuitBreaker.Permit permit = givenPermit();
+
+        circuitBreaker.onFailure(permit);
+
+        then(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        then(circuitBreaker.tryAcquire()).isEmpty();
+    }
+
+    @Test
+    public void shouldLetSingleTrialRequestThroughAfterOpenDuration() {
+
+        givenFailures(3);
+
+        whenTimePasses(Duration.ofSeconds(30));
+
+        then(circuitBreaker.isOpen()).isFalse();
+        then(circuitBreaker.tryAcquire()).isPresent();
+        then(circuitBreaker.tryAcquire()).isEmpty();
+        then(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulTrialRequest() {
+
+        givenFailures(3);
+        whenTimePasses(Duration.ofSeconds(30));
+        CircuitBreaker.Permit permit = givenPermit();
+
+        circuitBreaker.onSuccess(permit);
+
+        then(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        then(circuitBreaker.tryAcquire()).isPresent();
+        then(circuitBreaker.tryAcquire()).isPresent();
+    }
+
+    @Test
+    public void shouldOpenAgainAfterFailedTrialRequest() {
+
+        givenFailures(3);
+        whenTimePasses(Duration.ofSeconds(30));
+        CircuitBreaker.Permit permit = givenPermit();
+
+        circuitBreaker.onFailure(permit);
+
+        then(circuitBreaker.isOpen()).isTrue();
+        then(circuitBreaker.tryAcquire()).isEmpty();
+    }
+
+    @Test
+    public void shouldAllowAnotherTrialRequestIfOutcomeIsIgnored() {
+
+        givenFailures(3);
+        whenTimePasses(Duration.ofSeconds(30));
+        CircuitBreaker.Permit permit = givenPermit();
+
+        circuitBreaker.onIgnored(permit);
+
+        then(circuitBreaker.tryAcquire()).isPresent();
+    }
+
+    @Test
+    public void shouldIgnoreSuccessOfRequestAdmittedBeforeOpening() {
+
+        CircuitBreaker.Permit slowPermit = givenPermit();
+        givenFailures(3);
+
+        circuitBreaker.onSuccess(slowPermit);
+
+        then(circuitBreaker.isOpen()).isTrue();
+        then(circuitBreaker.tryAcquire()).isEmpty();
+    }
+
+    @Test
+    public void shouldKeepTrialRequestInProgressWhenRequestAdmittedBeforeOpeningCompletes() {
+
+        CircuitBreaker.Permit slowPermit = givenPermit();
+        givenFailures(3);
+        whenTimePasses(Duration.ofSeconds(30));
+        CircuitBreaker.Permit trialPermit = givenPermit();
+
+        circuitBreaker.onSuccess(slowPermit);
+        circuitBreaker.onFailure(slowPermit);
+        circuitBreaker.onIgnored(slowPermit);
+
+        then(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        then(circuitBreaker.tryAcquire()).isEmpty();
+
+        circuitBreaker.onSuccess(trialPermit);
+
+        then(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldNotCountFailuresOfRequestsAdmittedBeforeClosing() {
+
+        CircuitBreaker.Permit slowPermit = givenPermit();
+        givenFailures(3);
+        whenTimePasses(Duration.ofSeconds(30));
+        circuitBreaker.onSuccess(givenPermit());
+        givenFailures(2);
+
+        circuitBreaker.onFailure(slowPermit);
+
+        then(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private CircuitBreaker.Permit givenPermit() {
+
+        return circuitBreaker.tryAcquire().orElseThrow(IllegalStateException::new);
+    }
+
+    private void givenFailures(int count) {
+
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.onFailure(givenPermit());
+        }
+    }
+
+    private void whenTimePasses(Duration duration) {
+
+        nanoTime += duration.toNanos();
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link CommitMessageVersionExtractor}, which rejects messages without the literal required by the version
+ * pattern, with running the pattern on every message. Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=com.infobip.jira.CommitMessageVersionExtractorBenchmark
+ * -Dexec.classpathScope=test} or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitMessageVersionExtractorBenchmark {
+
+    private static final String REPOSITORY_NAME = "test-project";
+
+    @Param({
+            "Merge pull request #276 in TEST/test-project from feature/TEST-1234-add-retries to master",
+            "[maven-release-plugin] prepare for next development iteration",
+            "TEST-1 TEST-2 TEST-3: fixed NPE in parser, see also OTHER-12 and TEST-4 for details about the root cause",
+            "[maven-release-plugin] prepare release test-project-1.2.3"
+    })
+    public String message;
+
+    private Pattern pattern;
+    private CommitMessageVersionExtractor commitMessageVersionExtractor;
+
+    @Setup
+    public void setUp() {
+
+        pattern = Pattern.compile("\\[maven-release-plugin\\] prepare release " + REPOSITORY_NAME +
+                                  "-(?<version>.*)");
+        commitMessageVersionExtractor = new CommitMessageVersionExtractor(REPOSITORY_NAME);
+    }
+
+    @Benchmark
+    public String matcher() {
+
+        Matcher matcher = pattern.matcher(message);
+        return matcher.find() ? matcher.group("version") : null;
+    }
+
+    @Benchmark
+    public String extractor() {
+
+        return commitMessageVersionExtractor.extractVersionName(message).orElse(null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        new Runner(new OptionsBuilder().include(CommitMessageVersionExtractorBenchmark.class.getSimpleName())
+                                       .build()).run();
+    }
+}
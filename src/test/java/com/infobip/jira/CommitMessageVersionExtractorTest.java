@@ -51,6 +51,36 @@ public class CommitMessageVersionExtractorTest {
         then(actual).isNull();
     }
 
+    @Test
+    public void shouldFailToExtractVersionFromMessageThatOnlyContainsReleasePrefix() {
+
+        CommitMessageVersionExtractor extractor = new CommitMessageVersionExtractor("test-project", "^Release (?<version>\\d+)$");
+
+        String actual = extractor.extractVersionName("Release notes updated").orElse(null);
+
+        then(actual).isNull();
+    }
+
+    @Test
+    public void shouldExtractVersionWhenRepositoryNameContainsRegexMetaCharacters() {
+
+        CommitMessageVersionExtractor extractor = new CommitMessageVersionExtractor("test.project");
+
+        String actual = extractor.extractVersionName("[maven-release-plugin] prepare release test.project-1.0.0").orElse(null);
+
+        then(actual).isEqualTo("1.0.0");
+    }
+
+    @Test
+    public void shouldExtractVersionWhenPatternContainsCharacterEscapes() {
+
+        CommitMessageVersionExtractor extractor = new CommitMessageVersionExtractor("test-project", "Rel\\u0065ase R\\0145leaseZZ (?<version>.*)");
+
+        String actual = extractor.extractVersionName("Release ReleaseZZ 1.0.0").orElse(null);
+
+        then(actual).isEqualTo("1.0.0");
+    }
+
     @Test
     public void shouldHandleNull() {
         CommitMessageVersionExtractor extractor = new CommitMessageVersionExtractor("");
@@ -0,0 +1,68 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class IssueIdSetTest {
+
+    private final IssueIdSet issueIdSet = new IssueIdSet();
+
+    @Test
+    public void shouldAddIdOnlyOnce() {
+
+        then(issueIdSet.add(123)).isTrue();
+        then(issueIdSet.add(123)).isFalse();
+        then(issueIdSet.add(0)).isTrue();
+        then(issueIdSet.add(0)).isFalse();
+        then(issueIdSet.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldContainAllIdsAfterGrowing() {
+
+        for (long id = 1; id <= 10_000; id++) {
+            issueIdSet.add(id * 31);
+        }
+
+        then(issueIdSet.size()).isEqualTo(10_000);
+        for (long id = 1; id <= 10_000; id++) {
+            then(issueIdSet.contains(id * 31)).isTrue();
+        }
+        then(issueIdSet.contains(32)).isFalse();
+    }
+
+    @Test
+    public void shouldIterateIdsInInsertionOrderAfterGrowing() {
+
+        List<Long> expected = new ArrayList<>();
+        for (long id = 10_000; id > 0; id--) {
+            issueIdSet.add(id * 7);
+            issueIdSet.add(id * 7);
+            expected.add(id * 7);
+        }
+
+        List<Long> actual = new ArrayList<>();
+        issueIdSet.forEach(actual::add);
+
+        then(actual).isEqualTo(expected);
+    }
+}
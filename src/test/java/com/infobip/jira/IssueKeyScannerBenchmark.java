@@ -0,0 +1,80 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link IssueKeyScanner} with the {@link Matcher#find()} loop it replaced. Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=com.infobip.jira.IssueKeyScannerBenchmark
+ * -Dexec.classpathScope=test} or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueKeyScannerBenchmark {
+
+    private static final ProjectKey PROJECT_KEY = new ProjectKey("TEST");
+
+    @Param({
+            "Merge pull request #276 in TEST/test-project from feature/TEST-1234-add-retries to master",
+            "[maven-release-plugin] prepare for next development iteration",
+            "TEST-1 TEST-2 TEST-3: fixed NPE in parser, see also OTHER-12 and TEST-4 for details about the root cause"
+    })
+    public String message;
+
+    private Pattern pattern;
+    private IssueKeyScanner issueKeyScanner;
+
+    @Setup
+    public void setUp() {
+
+        pattern = Pattern.compile(PROJECT_KEY.getValue() + "-([0-9]+)");
+        issueKeyScanner = IssueKeyScanner.of(PROJECT_KEY);
+    }
+
+    @Benchmark
+    public void matcher(Blackhole blackhole) {
+
+        Matcher matcher = pattern.matcher(message);
+
+        while (matcher.find()) {
+            blackhole.consume(new IssueKey(PROJECT_KEY, new IssueId(matcher.group(1))));
+        }
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+
+        issueKeyScanner.scan(message, blackhole::consume);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        new Runner(new OptionsBuilder().include(IssueKeyScannerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
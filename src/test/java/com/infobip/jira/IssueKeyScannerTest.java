@@ -0,0 +1,103 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class IssueKeyScannerTest {
+
+    private static final ProjectKey TEST = new ProjectKey("TEST");
+    private static final ProjectKey OTHER = new ProjectKey("OTHER");
+
+    @Test
+    public void shouldFindAllIssueKeysOfProject() {
+
+        List<IssueKey> actual = whenScan(IssueKeyScanner.of(TEST), "TEST-1 and OTHER-2 fixed, see TEST-23");
+
+        then(actual).containsExactly(issueKey(TEST, "1"), issueKey(TEST, "23"));
+    }
+
+    @Test
+    public void shouldFindIssueKeysOfMultipleProjects() {
+
+        List<IssueKey> actual = whenScan(IssueKeyScanner.of(ImmutableList.of(TEST, OTHER)),
+                                         "Merge pull request #276 in TEST/test-project from OTHER-2 to master\n\n" +
+                                         "* commit 'abc':\n  TEST-1 fixed");
+
+        then(actual).containsExactly(issueKey(OTHER, "2"), issueKey(TEST, "1"));
+    }
+
+    @Test
+    public void shouldDistinguishProjectKeysWithCommonPrefix() {
+
+        ProjectKey ab = new ProjectKey("AB");
+        ProjectKey abc = new ProjectKey("ABC");
+
+        List<IssueKey> actual = whenScan(IssueKeyScanner.of(ImmutableList.of(ab, abc)), "ABC-1 AB-2 ABD-3 A-4");
+
+        then(actual).containsExactly(issueKey(abc, "1"), issueKey(ab, "2"));
+    }
+
+    @Test
+    public void shouldFindIssueKeysSurroundedByPunctuation() {
+
+        List<IssueKey> actual = whenScan(IssueKeyScanner.of(TEST), "feature/TEST-1-description (TEST-2),[TEST-3]");
+
+        then(actual).containsExactly(issueKey(TEST, "1"), issueKey(TEST, "2"), issueKey(TEST, "3"));
+    }
+
+    @Test
+    public void shouldNotFindIssueKeyInsideOfWord() {
+
+        List<IssueKey> actual = whenScan(IssueKeyScanner.of(TEST), "XTEST-12 xTEST-13 1TEST-14 _TEST-15 TEST_X-16");
+
+        then(actual).isEmpty();
+    }
+
+    @Test
+    public void shouldNotFindIssueKeyWithoutIssueId() {
+
+        List<IssueKey> actual = whenScan(IssueKeyScanner.of(TEST), "TEST- TEST-x TEST");
+
+        then(actual).isEmpty();
+    }
+
+    @Test
+    public void shouldFindIssueKeyAtEndOfMessage() {
+
+        List<IssueKey> actual = whenScan(IssueKeyScanner.of(TEST), "fixed TEST-123");
+
+        then(actual).containsExactly(issueKey(TEST, "123"));
+    }
+
+    private List<IssueKey> whenScan(IssueKeyScanner issueKeyScanner, String message) {
+
+        List<IssueKey> issueKeys = new ArrayList<>();
+        issueKeyScanner.scan(message, issueKeys::add);
+        return issueKeys;
+    }
+
+    private IssueKey issueKey(ProjectKey projectKey, String issueId) {
+
+        return new IssueKey(projectKey, new IssueId(issueId));
+    }
+}
@@ -16,22 +16,37 @@
 package com.infobip.jira;
 
 import com.atlassian.applinks.api.*;
+import com.atlassian.applinks.api.event.ApplicationLinkDetailsChangedEvent;
+import com.atlassian.event.api.EventPublisher;
 import com.atlassian.sal.api.net.Request.MethodType;
+import com.atlassian.sal.api.net.Response;
 import com.atlassian.sal.api.net.ResponseException;
+import com.atlassian.sal.api.net.ResponseStatusException;
+import com.atlassian.sal.api.net.ResponseTransportException;
+import com.atlassian.sal.api.net.ReturningResponseHandler;
+import com.atlassian.sal.api.user.UserManager;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.*;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.Collections;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.assertj.core.api.BDDAssertions.then;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 
 @RunWith(MockitoJUnitRunner.class)
 public class JiraServiceTest {
@@ -42,6 +57,12 @@ public class JiraServiceTest {
     @Mock
     private ApplicationLinkService applicationLinkService;
 
+    @Mock
+    private UserManager userManager;
+
+    @Mock
+    private EventPublisher eventPublisher;
+
     @Mock
     private ApplicationLink jiraApplicationLink;
 
@@ -51,27 +72,47 @@ public class JiraServiceTest {
     @Mock
     private ApplicationLinkRequest applicationLinkRequest;
 
+    @Mock
+    private ApplicationLinkRequest searchRequest;
+
     @Before
-    public void setUp() throws CredentialsRequiredException {
+    public void setUp() throws CredentialsRequiredException, ResponseException {
 
         given(applicationLinkService.getPrimaryApplicationLink(any())).willReturn(jiraApplicationLink);
+        given(jiraApplicationLink.getId()).willReturn(new ApplicationId("8835b6b9-5676-3de4-ad59-bbe987416662"));
         given(jiraApplicationLink.createAuthenticatedRequestFactory()).willReturn(applicationLinkRequestFactory);
         given(applicationLinkRequestFactory.createRequest(any(), anyString())).willReturn(applicationLinkRequest);
         given(applicationLinkRequest.setHeader(any(), any())).willReturn(applicationLinkRequest);
         given(applicationLinkRequest.setRequestBody(any())).willReturn(applicationLinkRequest);
+        given(applicationLinkRequestFactory.createRequest(MethodType.POST, "/rest/api/2/search")).willReturn(searchRequest);
+        given(applicationLinkRequestFactory.createRequest(MethodType.POST, "/rest/api/3/search/jql")).willReturn(searchRequest);
+        given(searchRequest.setHeader(any(), any())).willReturn(searchRequest);
+        given(searchRequest.setRequestBody(any())).willReturn(searchRequest);
+        givenResponse(MethodType.GET, "/rest/api/2/serverInfo", "{\"deploymentType\":\"Server\"}");
     }
 
     @Test
     public void shouldFindJiraVersion() throws CredentialsRequiredException, ResponseException {
 
-        givenReturnedJson("[\n" +
-                "    {\n" +
-                "        \"id\": \"11780\",\n" +
-                "        \"name\": \"2.0.0\",\n" +
-                "        \"released\": true,\n" +
-                "        \"releaseDate\": \"2014-03-03\"\n" +
-                "    }\n" +
-                "]");
+        givenReturnedJson("{\n" +
+                "    \"maxResults\": 50,\n" +
+                "    \"startAt\": 0,\n" +
+                "    \"total\": 2,\n" +
+                "    \"isLast\": true,\n" +
+                "    \"values\": [\n" +
+                "        {\n" +
+                "            \"id\": \"11779\",\n" +
+                "            \"name\": \"2.0.0-RC1\",\n" +
+                "            \"released\": true\n" +
+                "        },\n" +
+                "        {\n" +
+                "            \"id\": \"11780\",\n" +
+                "            \"name\": \"2.0.0\",\n" +
+                "            \"released\": true,\n" +
+                "            \"releaseDate\": \"2014-03-03\"\n" +
+                "        }\n" +
+                "    ]\n" +
+                "}");
 
         SerializedVersion actual = jiraService.findVersion(new ProjectKey("TEST"), "2.0.0").orElse(null);
 
@@ -80,6 +121,127 @@ public class JiraServiceTest {
         then(actual).isEqualTo(new SerializedVersion("11780", "2.0.0", project, LocalDate.of(2014, 3, 3), released));
     }
 
+    @Test
+    public void shouldFindJiraVersionInVersionListIfVersionQueryIsNotAvailable() throws CredentialsRequiredException, ResponseException {
+
+        givenVersionQueryIsNotAvailable();
+        givenVersionsResponse("/rest/api/2/project/TEST/versions", "[{\"id\":\"11780\",\"name\":\"2.0.0\"}]");
+        givenVersionsResponse("/rest/api/2/project/OTHER/versions", "[{\"id\":\"11790\",\"name\":\"3.0.0\"}]");
+
+        Optional<SerializedVersion> actual = jiraService.findVersion(new ProjectKey("TEST"), "2.0.0");
+        Optional<SerializedVersion> otherActual = jiraService.findVersion(new ProjectKey("OTHER"), "3.0.0");
+
+        then(actual).contains(new SerializedVersion("11780", "2.0.0", null, null, null));
+        then(otherActual).contains(new SerializedVersion("11790", "3.0.0", null, null, null));
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.never())
+                  .createRequest(MethodType.GET, "/rest/api/2/project/OTHER/version?query=3.0.0&startAt=0");
+    }
+
+    @Test
+    public void shouldDownloadVersionsOfProjectOnceForMissingVersion() throws CredentialsRequiredException, ResponseException {
+
+        givenVersionQueryIsNotAvailable();
+        givenVersionsResponse("/rest/api/2/project/TEST/versions", "[{\"id\":\"11780\",\"name\":\"2.0.0\"}]");
+
+        jiraService.findVersion(new ProjectKey("TEST"), "2.0.1");
+        Optional<SerializedVersion> actual = jiraService.findVersion(new ProjectKey("TEST"), "2.0.1");
+
+        then(actual).isEmpty();
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.times(1))
+                  .createRequest(MethodType.GET, "/rest/api/2/project/TEST/versions");
+    }
+
+    @Test
+    public void shouldFindCreatedVersionWithoutDownload() throws CredentialsRequiredException, ResponseException {
+
+        givenVersionQueryIsNotAvailable();
+        givenVersionsResponse("/rest/api/2/project/TEST/versions", "[{\"id\":\"11780\",\"name\":\"2.0.0\"}]");
+        givenResponse(MethodType.POST, "/rest/api/2/version", "{\"id\":\"11781\",\"name\":\"2.0.1\",\"project\":\"TEST\"}");
+        jiraService.findVersion(new ProjectKey("TEST"), "2.0.1");
+
+        jiraService.createJiraVersion(new SerializedVersion(null, "2.0.1", "TEST", null, false));
+        Optional<SerializedVersion> actual = jiraService.findVersion(new ProjectKey("TEST"), "2.0.1");
+
+        then(actual).contains(new SerializedVersion("11781", "2.0.1", "TEST", null, null));
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.times(1))
+                  .createRequest(MethodType.GET, "/rest/api/2/project/TEST/versions");
+    }
+
+    @Test
+    public void shouldDownloadVersionsAgainAfterFailedCreate() throws CredentialsRequiredException, ResponseException {
+
+        givenVersionQueryIsNotAvailable();
+        givenVersionsResponse("/rest/api/2/project/TEST/versions", "[{\"id\":\"11780\",\"name\":\"2.0.0\"}]");
+        ApplicationLinkRequest createRequest = givenResponse(MethodType.POST, "/rest/api/2/version", null);
+        given(createRequest.execute()).willThrow(new ResponseException("A version with this name already exists"));
+        jiraService.findVersion(new ProjectKey("TEST"), "2.0.1");
+
+        Throwable thrown = catchThrowable(() -> jiraService.createJiraVersion(
+                new SerializedVersion(null, "2.0.1", "TEST", null, false)));
+        jiraService.findVersion(new ProjectKey("TEST"), "2.0.1");
+
+        then(thrown).isInstanceOf(JiraServiceException.class);
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.times(2))
+                  .createRequest(MethodType.GET, "/rest/api/2/project/TEST/versions");
+    }
+
+    @Test
+    public void shouldResolveApplicationLinkOnce() throws CredentialsRequiredException, ResponseException {
+
+        givenReturnedJson("{\"id\":\"11780\",\"name\":\"2.0.0\"}");
+
+        jiraService.createJiraVersion(new SerializedVersion(null, "2.0.0", "TEST", null, false));
+        jiraService.createJiraVersion(new SerializedVersion(null, "2.0.1", "TEST", null, false));
+
+        BDDMockito.then(applicationLinkService).should(Mockito.times(1)).getPrimaryApplicationLink(any());
+        BDDMockito.then(jiraApplicationLink).should(Mockito.times(1)).createAuthenticatedRequestFactory();
+    }
+
+    @Test
+    public void shouldResolveApplicationLinkAgainAfterApplicationLinkChange() throws CredentialsRequiredException, ResponseException {
+
+        givenReturnedJson("{\"id\":\"11780\",\"name\":\"2.0.0\"}");
+        jiraService.createJiraVersion(new SerializedVersion(null, "2.0.0", "TEST", null, false));
+
+        jiraService.onApplicationLinkEvent(new ApplicationLinkDetailsChangedEvent(jiraApplicationLink));
+        jiraService.createJiraVersion(new SerializedVersion(null, "2.0.1", "TEST", null, false));
+
+        BDDMockito.then(applicationLinkService).should(Mockito.times(2)).getPrimaryApplicationLink(any());
+        BDDMockito.then(jiraApplicationLink).should(Mockito.times(2)).createAuthenticatedRequestFactory();
+    }
+
+    @Test
+    public void shouldCreateRequestFactoryAgainAfterUnauthorizedResponse() throws CredentialsRequiredException, ResponseException {
+
+        Response unauthorized = Mockito.mock(Response.class);
+        given(unauthorized.getStatusCode()).willReturn(401);
+        given(applicationLinkRequest.execute()).willThrow(new ResponseStatusException("Unauthorized", unauthorized))
+                                               .willReturn("{\"id\":\"11780\",\"name\":\"2.0.0\"}");
+        SerializedVersion version = new SerializedVersion(null, "2.0.0", "TEST", null, false);
+
+        Throwable thrown = catchThrowable(() -> jiraService.createJiraVersion(version));
+        jiraService.createJiraVersion(version);
+
+        then(thrown).isInstanceOf(JiraServiceException.class);
+        BDDMockito.then(jiraApplicationLink).should(Mockito.times(2)).createAuthenticatedRequestFactory();
+    }
+
+    @Test
+    public void shouldRejectRequestsWhileJiraIsUnavailable() throws CredentialsRequiredException, ResponseException {
+
+        given(applicationLinkRequest.execute()).willThrow(new ResponseTransportException(new IOException("Connection refused")));
+        SerializedVersion version = new SerializedVersion(null, "2.0.0", "TEST", null, false);
+        for (int i = 0; i < 5; i++) {
+            catchThrowable(() -> jiraService.createJiraVersion(version));
+        }
+
+        Throwable thrown = catchThrowable(() -> jiraService.createJiraVersion(version));
+
+        then(thrown).isInstanceOf(JiraServiceException.class);
+        then(jiraService.isAvailable()).isFalse();
+        BDDMockito.then(applicationLinkRequest).should(Mockito.times(5)).execute();
+    }
+
     @Test
     public void shouldReleaseVersion() throws ResponseException, CredentialsRequiredException {
 
@@ -103,16 +265,271 @@ public class JiraServiceTest {
     }
 
     @Test
-    public void shouldAddVersionToIssues() throws CredentialsRequiredException {
+    public void shouldAddVersionToIssues() throws CredentialsRequiredException, ResponseException {
 
         ProjectKey projectKey = new ProjectKey("TEST");
-        jiraService.addVersionToIssues("1.0.0", projectKey, Collections.singletonList(new IssueKey(projectKey, new IssueId("1"))));
+        givenFoundIssues("TEST-1");
+        jiraService.addVersionToIssues("1.0.0", projectKey, Collections.singletonList(new IssueKey(projectKey, new IssueId("1"))), Runnable::run);
 
         String actualUrl = "/rest/api/2/issue/TEST-1";
         String actualBody = "{\"update\":{\"fixVersions\":[{\"add\":{\"name\":\"1.0.0\",\"project\":\"TEST\"}}]}}";
         thenShouldSendRequest(MethodType.PUT, actualUrl, actualBody);
     }
 
+    @Test
+    public void shouldEscapeVersionNameInRequestBody() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        givenFoundIssues("TEST-1");
+        jiraService.addVersionToIssues("1.0.0 \"final\"", projectKey, Collections.singletonList(new IssueKey(projectKey, new IssueId("1"))), Runnable::run);
+
+        String actualUrl = "/rest/api/2/issue/TEST-1";
+        String actualBody = "{\"update\":{\"fixVersions\":[{\"add\":{\"name\":\"1.0.0 \\\"final\\\"\",\"project\":\"TEST\"}}]}}";
+        thenShouldSendRequest(MethodType.PUT, actualUrl, actualBody);
+    }
+
+    @Test
+    public void shouldCollectFailedIssuesAndContinue() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        IssueKey missingIssue = new IssueKey(projectKey, new IssueId("1"));
+        IssueKey existingIssue = new IssueKey(projectKey, new IssueId("2"));
+        givenFoundIssues("TEST-1", "TEST-2");
+        given(applicationLinkRequest.execute()).willThrow(new ResponseException("Issue does not exist")).willReturn("");
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0",
+                                                                  projectKey,
+                                                                  Arrays.asList(missingIssue, existingIssue),
+                                                                  Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(existingIssue);
+        then(actual.getFailed()).containsOnlyKeys(missingIssue);
+        BDDMockito.then(applicationLinkRequestFactory).should().createRequest(MethodType.PUT, "/rest/api/2/issue/TEST-2");
+    }
+
+    @Test
+    public void shouldUpdateEveryIssueConcurrentlyAndCollectFailures() throws CredentialsRequiredException, ResponseException, InterruptedException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        List<IssueKey> issueKeys = new ArrayList<>();
+        List<IssueKey> updatedIssueKeys = new ArrayList<>();
+        List<IssueKey> failedIssueKeys = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            IssueKey issueKey = new IssueKey(projectKey, new IssueId(String.valueOf(i)));
+            issueKeys.add(issueKey);
+            if (i % 5 == 0) {
+                ApplicationLinkRequest failingRequest = givenResponse(MethodType.PUT, "/rest/api/2/issue/" + issueKey, null);
+                given(failingRequest.execute()).willThrow(new ResponseException("Issue does not exist"));
+                failedIssueKeys.add(issueKey);
+            } else {
+                updatedIssueKeys.add(issueKey);
+            }
+        }
+        givenFoundIssues(issueKeys.stream().map(IssueKey::toString).toArray(String[]::new));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        IssueUpdateResult actual;
+        try {
+            actual = jiraService.addVersionToIssues("1.0.0", projectKey, issueKeys, executor);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        then(actual.getUpdated()).hasSize(updatedIssueKeys.size()).containsOnly(updatedIssueKeys.toArray(new IssueKey[0]));
+        then(actual.getFailed()).containsOnlyKeys(failedIssueKeys.toArray(new IssueKey[0]));
+        then(actual.getSkipped()).isEmpty();
+    }
+
+    @Test
+    public void shouldSkipIssuesThatAreMissingOrAlreadyHaveVersion() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        IssueKey linkedIssue = new IssueKey(projectKey, new IssueId("1"));
+        IssueKey unlinkedIssue = new IssueKey(projectKey, new IssueId("2"));
+        givenFoundIssues("TEST-2");
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0",
+                                                                  projectKey,
+                                                                  Arrays.asList(linkedIssue, unlinkedIssue),
+                                                                  Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(unlinkedIssue);
+        then(actual.getSkipped()).containsExactly(linkedIssue);
+        BDDMockito.then(searchRequest).should().setRequestBody("{\"jql\":\"issuekey in (TEST-1,TEST-2) AND (fixVersion is EMPTY OR fixVersion != \\\"1.0.0\\\")\"," +
+                                                               "\"startAt\":0,\"maxResults\":100,\"fields\":[\"key\"],\"validateQuery\":false}");
+        BDDMockito.then(applicationLinkRequestFactory).should().createRequest(MethodType.PUT, "/rest/api/2/issue/TEST-2");
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.never()).createRequest(MethodType.PUT, "/rest/api/2/issue/TEST-1");
+    }
+
+    @Test
+    public void shouldRetryIssueSearchAfterTemporaryFailure() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        IssueKey linkedIssue = new IssueKey(projectKey, new IssueId("1"));
+        IssueKey unlinkedIssue = new IssueKey(projectKey, new IssueId("2"));
+        Response unavailable = Mockito.mock(Response.class);
+        given(unavailable.getStatusCode()).willReturn(503);
+        given(searchRequest.execute()).willThrow(new ResponseStatusException("Service Unavailable", unavailable))
+                                      .willReturn("{\"startAt\":0,\"maxResults\":100,\"total\":1,\"issues\":[{\"id\":\"1001\",\"key\":\"TEST-2\"}]}");
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0",
+                                                                  projectKey,
+                                                                  Arrays.asList(linkedIssue, unlinkedIssue),
+                                                                  Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(unlinkedIssue);
+        then(actual.getSkipped()).containsExactly(linkedIssue);
+        BDDMockito.then(searchRequest).should(Mockito.times(2)).execute();
+    }
+
+    @Test
+    public void shouldUpdateAllIssuesIfSearchFails() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        given(searchRequest.execute()).willThrow(new ResponseException("Search is not available"));
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0",
+                                                                  projectKey,
+                                                                  Collections.singletonList(new IssueKey(projectKey, new IssueId("1"))),
+                                                                  Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(new IssueKey(projectKey, new IssueId("1")));
+    }
+
+    @Test
+    public void shouldAddVersionToIssuesWithBulkEditOnJiraCloud() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        IssueKey processedIssue = new IssueKey(projectKey, new IssueId("1"));
+        IssueKey failedIssue = new IssueKey(projectKey, new IssueId("2"));
+        givenResponse(MethodType.GET, "/rest/api/2/serverInfo", "{\"deploymentType\":\"Cloud\"}");
+        givenResponse(MethodType.GET,
+                      "/rest/api/2/project/TEST/version?query=1.0.0&startAt=0",
+                      "{\"isLast\":true,\"values\":[{\"id\":\"10000\",\"name\":\"1.0.0\"}]}");
+        givenFoundIssues("TEST-1", "TEST-2");
+        givenResponse(MethodType.POST, "/rest/api/3/bulk/issues/fields", "{\"taskId\":\"42\"}");
+        givenResponse(MethodType.GET,
+                      "/rest/api/3/bulk/queue/42",
+                      "{\"taskId\":\"42\",\"status\":\"COMPLETE\",\"processedAccessibleIssues\":[1000]," +
+                      "\"failedAccessibleIssues\":{\"1001\":[\"Field fixVersions cannot be edited\"]}}");
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0",
+                                                                  projectKey,
+                                                                  Arrays.asList(processedIssue, failedIssue),
+                                                                  Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(processedIssue);
+        then(actual.getFailed()).containsOnlyKeys(failedIssue);
+        BDDMockito.then(searchRequest).should().setRequestBody("{\"jql\":\"issuekey in (TEST-1,TEST-2) AND (fixVersion is EMPTY OR fixVersion != \\\"1.0.0\\\")\"," +
+                                                               "\"maxResults\":100,\"fields\":[\"key\"]}");
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.never()).createRequest(MethodType.POST, "/rest/api/2/search");
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.never()).createRequest(eq(MethodType.PUT), anyString());
+    }
+
+    @Test
+    public void shouldSubmitBulkEditThatAddsVersionByIdWithoutNotification()
+            throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        givenResponse(MethodType.GET, "/rest/api/2/serverInfo", "{\"deploymentType\":\"Cloud\"}");
+        givenResponse(MethodType.GET,
+                      "/rest/api/2/project/TEST/version?query=1.0.0&startAt=0",
+                      "{\"isLast\":true,\"values\":[{\"id\":\"10000\",\"name\":\"1.0.0\"}]}");
+        givenFoundIssues("TEST-1", "TEST-2");
+        ApplicationLinkRequest bulkEditRequest = givenResponse(MethodType.POST,
+                                                               "/rest/api/3/bulk/issues/fields",
+                                                               "{\"taskId\":\"42\"}");
+        givenResponse(MethodType.GET,
+                      "/rest/api/3/bulk/queue/42",
+                      "{\"taskId\":\"42\",\"status\":\"COMPLETE\",\"processedAccessibleIssues\":[1000,1001]}");
+
+        jiraService.addVersionToIssues("1.0.0",
+                                       projectKey,
+                                       Arrays.asList(new IssueKey(projectKey, new IssueId("1")),
+                                                     new IssueKey(projectKey, new IssueId("2"))),
+                                       Runnable::run);
+
+        BDDMockito.then(bulkEditRequest).should().setRequestBody("{\"selectedIssueIdsOrKeys\":[\"TEST-1\",\"TEST-2\"]," +
+                                                                 "\"selectedActions\":[\"fixVersions\"]," +
+                                                                 "\"editedFieldsInput\":{\"multipleVersionPickerFields\":[{" +
+                                                                 "\"fieldId\":\"fixVersions\"," +
+                                                                 "\"bulkEditMultiVersionPickerOption\":\"ADD\"," +
+                                                                 "\"versions\":[{\"versionId\":\"10000\"}]}]}," +
+                                                                 "\"sendBulkNotification\":false}");
+    }
+
+    @Test
+    public void shouldBulkEditIssuesByKeyOnJiraCloudIfSearchFails() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        IssueKey firstIssue = new IssueKey(projectKey, new IssueId("1"));
+        IssueKey secondIssue = new IssueKey(projectKey, new IssueId("2"));
+        givenResponse(MethodType.GET, "/rest/api/2/serverInfo", "{\"deploymentType\":\"Cloud\"}");
+        givenResponse(MethodType.GET,
+                      "/rest/api/2/project/TEST/version?query=1.0.0&startAt=0",
+                      "{\"isLast\":true,\"values\":[{\"id\":\"10000\",\"name\":\"1.0.0\"}]}");
+        given(searchRequest.execute()).willThrow(new ResponseException("Search is not available"));
+        ApplicationLinkRequest bulkEditRequest = givenResponse(MethodType.POST,
+                                                               "/rest/api/3/bulk/issues/fields",
+                                                               "{\"taskId\":\"42\"}");
+        givenResponse(MethodType.GET,
+                      "/rest/api/3/bulk/queue/42",
+                      "{\"taskId\":\"42\",\"status\":\"COMPLETE\",\"processedAccessibleIssues\":[1000,1001]}");
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0",
+                                                                  projectKey,
+                                                                  Arrays.asList(firstIssue, secondIssue),
+                                                                  Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(firstIssue, secondIssue);
+        BDDMockito.then(bulkEditRequest).should().setRequestBody(startsWith("{\"selectedIssueIdsOrKeys\":[\"TEST-1\",\"TEST-2\"],"));
+        BDDMockito.then(applicationLinkRequestFactory).should(Mockito.never()).createRequest(eq(MethodType.PUT), anyString());
+    }
+
+    @Test
+    public void shouldSearchCloudIssuesAgainWithoutKeysRejectedByJira() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        IssueKey unlinkedIssue = new IssueKey(projectKey, new IssueId("1"));
+        IssueKey deletedIssue = new IssueKey(projectKey, new IssueId("2"));
+        IssueKey linkedIssue = new IssueKey(projectKey, new IssueId("3"));
+        givenResponse(MethodType.GET, "/rest/api/2/serverInfo", "{\"deploymentType\":\"Cloud\"}");
+        givenResponse(MethodType.GET, "/rest/api/2/project/TEST/version?query=1.0.0&startAt=0", "{\"isLast\":true,\"values\":[]}");
+        ResponseStatusException badRequest = badRequest(
+                "{\"errorMessages\":[\"An issue with key 'TEST-2' does not exist for field 'issuekey'.\"]}");
+        given(searchRequest.execute()).willThrow(badRequest).willReturn(foundIssues("TEST-1"));
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0",
+                                                                  projectKey,
+                                                                  Arrays.asList(unlinkedIssue, deletedIssue, linkedIssue),
+                                                                  Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(unlinkedIssue);
+        then(actual.getSkipped()).containsExactly(deletedIssue, linkedIssue);
+        BDDMockito.then(searchRequest).should().setRequestBody(startsWith("{\"jql\":\"issuekey in (TEST-1,TEST-3) AND"));
+    }
+
+    @Test
+    public void shouldSearchHalvesOfCloudIssuesIfRejectedKeysAreNotNamed() throws CredentialsRequiredException, ResponseException {
+
+        ProjectKey projectKey = new ProjectKey("TEST");
+        List<IssueKey> issueKeys = Arrays.asList(new IssueKey(projectKey, new IssueId("1")),
+                                                 new IssueKey(projectKey, new IssueId("2")),
+                                                 new IssueKey(projectKey, new IssueId("3")),
+                                                 new IssueKey(projectKey, new IssueId("4")));
+        givenResponse(MethodType.GET, "/rest/api/2/serverInfo", "{\"deploymentType\":\"Cloud\"}");
+        givenResponse(MethodType.GET, "/rest/api/2/project/TEST/version?query=1.0.0&startAt=0", "{\"isLast\":true,\"values\":[]}");
+        ResponseStatusException badRequest = badRequest("{}");
+        given(searchRequest.execute()).willThrow(badRequest).willReturn(foundIssues("TEST-1")).willThrow(badRequest);
+
+        IssueUpdateResult actual = jiraService.addVersionToIssues("1.0.0", projectKey, issueKeys, Runnable::run);
+
+        then(actual.getUpdated()).containsExactly(issueKeys.get(0), issueKeys.get(2), issueKeys.get(3));
+        then(actual.getSkipped()).containsExactly(issueKeys.get(1));
+        BDDMockito.then(searchRequest).should(Mockito.times(3)).execute();
+    }
+
     private void thenShouldSendRequest(MethodType methodType, String url, String body) throws CredentialsRequiredException {
 
         BDDMockito.then(applicationLinkRequestFactory).should().createRequest(methodType, url);
@@ -123,4 +540,60 @@ public class JiraServiceTest {
 
         given(applicationLinkRequest.execute()).willReturn(json);
     }
+
+    private void givenFoundIssues(String... issueKeys) throws ResponseException {
+
+        given(searchRequest.execute()).willReturn(foundIssues(issueKeys));
+    }
+
+    private String foundIssues(String... issueKeys) {
+
+        StringJoiner issues = new StringJoiner(",");
+        for (int i = 0; i < issueKeys.length; i++) {
+            issues.add("{\"id\":\"" + (1000 + i) + "\",\"key\":\"" + issueKeys[i] + "\"}");
+        }
+        return "{\"startAt\":0,\"maxResults\":100,\"total\":" + issueKeys.length + ",\"issues\":[" + issues + "]}";
+    }
+
+    private ResponseStatusException badRequest(String json) throws ResponseException {
+
+        Response response = Mockito.mock(Response.class);
+        given(response.getStatusCode()).willReturn(400);
+        given(response.getResponseBodyAsString()).willReturn(json);
+        return new ResponseStatusException("Bad Request", response);
+    }
+
+    private ApplicationLinkRequest givenResponse(MethodType methodType, String url, String json)
+            throws CredentialsRequiredException, ResponseException {
+
+        ApplicationLinkRequest request = Mockito.mock(ApplicationLinkRequest.class);
+        given(request.setHeader(any(), any())).willReturn(request);
+        given(request.setRequestBody(any())).willReturn(request);
+        given(request.execute()).willReturn(json);
+        given(applicationLinkRequestFactory.createRequest(methodType, url)).willReturn(request);
+        return request;
+    }
+
+    private void givenVersionsResponse(String url, String json) throws CredentialsRequiredException, ResponseException {
+
+        Response response = Mockito.mock(Response.class);
+        given(response.isSuccessful()).willReturn(true);
+        given(response.getStatusCode()).willReturn(200);
+        given(response.getResponseBodyAsStream()).willAnswer(
+                invocation -> new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        ApplicationLinkRequest request = givenResponse(MethodType.GET, url, null);
+        given(request.executeAndReturn(any())).willAnswer(
+                invocation -> ((ReturningResponseHandler<Response, ?>) invocation.getArguments()[0]).handle(response));
+    }
+
+    private void givenVersionQueryIsNotAvailable() throws CredentialsRequiredException, ResponseException {
+
+        Response notFound = Mockito.mock(Response.class);
+        given(notFound.getStatusCode()).willReturn(404);
+        ApplicationLinkRequest request = Mockito.mock(ApplicationLinkRequest.class);
+        given(request.setHeader(any(), any())).willReturn(request);
+        given(request.execute()).willThrow(new ResponseStatusException("Not Found", notFound));
+        given(applicationLinkRequestFactory.createRequest(eq(MethodType.GET), startsWith("/rest/api/2/project/TEST/version?")))
+                .willReturn(request);
+    }
 }
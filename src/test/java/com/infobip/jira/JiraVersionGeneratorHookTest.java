@@ -16,25 +16,32 @@
 package com.infobip.jira;
 
 import com.atlassian.applinks.api.CredentialsRequiredException;
+import com.atlassian.bitbucket.auth.AuthenticationContext;
 import com.atlassian.bitbucket.commit.*;
 import com.atlassian.bitbucket.hook.repository.PostRepositoryHookContext;
 import com.atlassian.bitbucket.hook.repository.RepositoryHookRequest;
-import com.atlassian.bitbucket.repository.RefChange;
-import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.repository.*;
 import com.atlassian.bitbucket.setting.Settings;
+import com.atlassian.bitbucket.user.SecurityService;
 import com.atlassian.bitbucket.user.TestApplicationUser;
 import com.atlassian.bitbucket.util.*;
 import com.atlassian.sal.api.net.ResponseException;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.infobip.bitbucket.HookJobExecutor;
 import com.infobip.bitbucket.JiraVersionGeneratorHook;
+import com.infobip.bitbucket.ReleaseMarkerIndex;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.verification.VerificationMode;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.util.*;
@@ -45,6 +52,8 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.refEq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -52,15 +61,32 @@ public class JiraVersionGeneratorHookTest {
 
     private static final LocalDate START_OF_2016 = LocalDate.of(2016, 1, 1);
 
-    @InjectMocks
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private JiraVersionGeneratorHook jiraVersionGeneratorHook;
 
     @Mock
     private CommitService commitService;
 
+    @Mock
+    private RefService refService;
+
     @Mock
     private JiraService jiraService;
 
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private PluginSettingsFactory pluginSettingsFactory;
+
+    @Mock
+    private PluginSettings pluginSettings;
+
+    @Mock
+    private AuthenticationContext authenticationContext;
+
     @Mock
     private PostRepositoryHookContext context;
 
@@ -76,17 +102,43 @@ public class JiraVersionGeneratorHookTest {
     @Mock
     private RefChange olderRefChange;
 
+    @Mock
+    private RefChange tagRefChange;
+
+    @Mock
+    private RefChange nextIterationRefChange;
+
+    @Mock
+    private MinimalRef latestRef;
+
+    @Mock
+    private MinimalRef olderRef;
+
+    @Mock
+    private MinimalRef tagRef;
+
     @Mock
     private Settings settings;
 
     @Before
     public void setUp() {
 
+        given(pluginSettingsFactory.createGlobalSettings()).willReturn(pluginSettings);
+        jiraVersionGeneratorHook = createHook(new HookJobExecutor(Runnable::run, 1, Duration.ZERO));
         given(context.getSettings()).willReturn(settings);
+        given(jiraService.addVersionToIssues(any(), any(), any(), any())).willReturn(
+                new IssueUpdateResult(Collections.emptyList(), Collections.emptyList(), Collections.emptyMap(), Duration.ZERO));
         given(settings.getString(anyString(), eq(""))).willReturn("");
         given(request.getRepository()).willReturn(repository);
         given(latestRefChange.getToHash()).willReturn("latestRefChange");
         given(olderRefChange.getToHash()).willReturn("olderRefChange");
+        given(tagRefChange.getToHash()).willReturn("tagRefChange");
+        given(latestRef.getId()).willReturn("refs/heads/latest");
+        given(olderRef.getId()).willReturn("refs/heads/older");
+        given(tagRef.getId()).willReturn("refs/tags/test-project-1.0.0");
+        given(latestRefChange.getRef()).willReturn(latestRef);
+        given(olderRefChange.getRef()).willReturn(olderRef);
+        given(tagRefChange.getRef()).willReturn(tagRef);
     }
 
     @Test
@@ -173,7 +225,7 @@ public class JiraVersionGeneratorHookTest {
 
         then(jiraService).should().findVersion(new ProjectKey("TEST"), "1.0.0");
         thenGetCommits(times(1), olderRefChange);
-        thenGetCommits(times(1), latestRefChange);
+        thenGetCommits(never(), latestRefChange);
     }
 
     @Test
@@ -195,7 +247,7 @@ public class JiraVersionGeneratorHookTest {
 
         then(jiraService).should().findVersion(new ProjectKey("TEST"), "1.0.0");
         thenGetCommits(times(1), latestRefChange);
-        thenGetCommits(times(1), olderRefChange);
+        thenGetCommits(never(), olderRefChange);
     }
 
     @Test
@@ -215,7 +267,7 @@ public class JiraVersionGeneratorHookTest {
 
         then(jiraService).should().createJiraVersion(unreleasedSerializedVersion("1.0.0", "TEST"));
 
-        then(jiraService).should().addVersionToIssues("1.0.0", new ProjectKey("TEST"), Arrays.asList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")), new IssueKey(new ProjectKey("TEST"), new IssueId("2"))));
+        then(jiraService).should().addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("TEST")), eq(Arrays.asList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")), new IssueKey(new ProjectKey("TEST"), new IssueId("2")))), any());
     }
 
     @Test
@@ -236,7 +288,7 @@ public class JiraVersionGeneratorHookTest {
 
         then(jiraService).should().createJiraVersion(unreleasedSerializedVersion("1.0.0", "TEST"));
 
-        then(jiraService).should().addVersionToIssues("1.0.0", new ProjectKey("TEST"), Arrays.asList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")), new IssueKey(new ProjectKey("TEST"), new IssueId("2"))));
+        then(jiraService).should().addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("TEST")), eq(Arrays.asList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")), new IssueKey(new ProjectKey("TEST"), new IssueId("2")))), any());
     }
 
     @Test
@@ -255,7 +307,201 @@ public class JiraVersionGeneratorHookTest {
 
         then(jiraService).should().createJiraVersion(unreleasedSerializedVersion("1.0.0", "TEST"));
 
-        then(jiraService).should().addVersionToIssues("1.0.0", new ProjectKey("TEST"), Arrays.asList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")), new IssueKey(new ProjectKey("TEST"), new IssueId("2")), new IssueKey(new ProjectKey("TEST"), new IssueId("3"))));
+        then(jiraService).should().addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("TEST")), eq(Arrays.asList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")), new IssueKey(new ProjectKey("TEST"), new IssueId("2")), new IssueKey(new ProjectKey("TEST"), new IssueId("3")))), any());
+    }
+
+    @Test
+    public void shouldLinkIssuesOfMultipleProjectsToVersionOfEachProject() throws IOException, CredentialsRequiredException, ResponseException {
+
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST, OTHER, UNUSED");
+        givenCommits(latestRefChange,
+                givenCommit("[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016),
+                givenCommit("Merge pull request #2 in TEST/test-project from OTHER-2, TEST-1", START_OF_2016),
+                givenCommit("OTHER-3", START_OF_2016));
+        givenJiraVersionDoesNotExist();
+        givenCreatedVersion("1", "1.0.0", "TEST");
+
+        whenPostReceive(latestRefChange);
+
+        then(jiraService).should().createJiraVersion(unreleasedSerializedVersion("1.0.0", "TEST"));
+        then(jiraService).should().createJiraVersion(unreleasedSerializedVersion("1.0.0", "OTHER"));
+        then(jiraService).should(never()).createJiraVersion(unreleasedSerializedVersion("1.0.0", "UNUSED"));
+        then(jiraService).should().addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("TEST")), eq(Collections.singletonList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")))), any());
+        then(jiraService).should().addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("OTHER")), eq(Arrays.asList(new IssueKey(new ProjectKey("OTHER"), new IssueId("2")), new IssueKey(new ProjectKey("OTHER"), new IssueId("3")))), any());
+    }
+
+    @Test
+    public void shouldGenerateJiraVersionForEveryRefChangeInPush() throws IOException, CredentialsRequiredException, ResponseException {
+
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        Commit releaseCommit = givenCommit("[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016);
+        Commit issueCommit = givenCommit("TEST-1", START_OF_2016);
+        givenCommits(latestRefChange,
+                givenCommit("[maven-release-plugin] prepare for next development iteration", START_OF_2016),
+                releaseCommit,
+                issueCommit);
+        givenCommits(tagRefChange, releaseCommit, issueCommit);
+        givenJiraVersionDoesNotExist();
+        givenCreatedVersion("1", "1.0.0", "TEST");
+
+        whenPostReceive(latestRefChange, tagRefChange);
+
+        then(jiraService).should().createJiraVersion(unreleasedSerializedVersion("1.0.0", "TEST"));
+        then(jiraService).should().addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("TEST")), eq(Collections.singletonList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")))), any());
+    }
+
+    @Test
+    public void shouldGenerateJiraVersionOnceForRefChangesWithSameReleaseCommit() throws IOException, CredentialsRequiredException, ResponseException {
+
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        Commit releaseCommit = givenCommit("[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016);
+        Commit issueCommit = givenCommit("TEST-1", START_OF_2016);
+        givenCommits(latestRefChange, releaseCommit, issueCommit);
+        givenCommits(tagRefChange, releaseCommit, issueCommit);
+        givenJiraVersionDoesNotExist();
+        givenCreatedVersion("1", "1.0.0", "TEST");
+
+        whenPostReceive(latestRefChange, tagRefChange);
+
+        then(jiraService).should(times(1)).findVersion(new ProjectKey("TEST"), "1.0.0");
+        then(jiraService).should(times(1)).createJiraVersion(unreleasedSerializedVersion("1.0.0", "TEST"));
+    }
+
+    @Test
+    public void shouldBoundCommitCrawlByPreviousReleaseCommitOfRef() throws IOException, CredentialsRequiredException, ResponseException {
+
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        given(latestRefChange.getRef()).willReturn(olderRef);
+        givenCommits(olderRefChange,
+                givenCommit("release-1", "[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016),
+                givenCommit("TEST-1", START_OF_2016));
+        givenCommits(latestRefChange,
+                Collections.singletonList("release-1"),
+                givenCommit("release-2", "[maven-release-plugin] prepare release test-project-1.0.1", START_OF_2016),
+                givenCommit("TEST-2", START_OF_2016));
+        given(commitService.getCommitsBetween(refEq(new CommitsBetweenRequest.Builder(repository).include("release-2")
+                                                                                               .exclude("release-1")
+                                                                                               .build()), any()))
+                .willReturn(new PageImpl<>(new PageRequestImpl(0, 1),
+                                           Collections.singletonList(givenCommit("release-2", "", START_OF_2016)),
+                                           true));
+        givenJiraVersionDoesNotExist();
+        givenCreatedVersion("1", "1.0.0", "TEST");
+
+        whenPostReceive(olderRefChange);
+        whenPostReceive(latestRefChange);
+
+        thenGetCommits(times(1), latestRefChange, Collections.singletonList("release-1"));
+        then(jiraService).should().findVersion(new ProjectKey("TEST"), "1.0.1");
+    }
+
+    @Test
+    public void shouldNotCrawlCommitsWhenTipIsNotAReleaseCommit() {
+
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        givenCommits(latestRefChange,
+                givenCommit("TEST-2", START_OF_2016),
+                givenCommit("[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016));
+
+        whenPostReceive(latestRefChange);
+
+        thenGetCommits(never(), latestRefChange);
+        then(jiraService).shouldHaveZeroInteractions();
+    }
+
+    @Test
+    public void shouldParseSettingsOnceWhileTheyDoNotChange() {
+
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        givenCommits(latestRefChange, givenCommit("TEST-2", START_OF_2016));
+
+        whenPostReceive(latestRefChange);
+        whenPostReceive(latestRefChange);
+
+        then(settings).should(times(1)).getString("jira-project-key");
+    }
+
+    @Test
+    public void shouldParseSettingsAgainAfterTheyChange() {
+
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        givenCommits(latestRefChange, givenCommit("TEST-2", START_OF_2016));
+        whenPostReceive(latestRefChange);
+
+        given(settings.asMap()).willReturn(Collections.singletonMap("jira-project-key", "OTHER"));
+        whenPostReceive(latestRefChange);
+
+        then(settings).should(times(2)).getString("jira-project-key");
+    }
+
+    @Test
+    public void shouldGenerateJiraVersionForReleaseCommitFollowedByNextIterationCommitWithinDebounceWindow() throws IOException, CredentialsRequiredException, ResponseException {
+
+        HookJobExecutor debouncingHookJobExecutor = new HookJobExecutor(Runnable::run, 10, Duration.ZERO, Duration.ofMillis(100));
+        jiraVersionGeneratorHook = createHook(debouncingHookJobExecutor);
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        given(nextIterationRefChange.getRef()).willReturn(latestRef);
+        given(nextIterationRefChange.getToHash()).willReturn("nextIterationRefChange");
+        Commit releaseCommit = givenCommit("release-1", "[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016);
+        Commit issueCommit = givenCommit("TEST-1", START_OF_2016);
+        givenCommits(latestRefChange, releaseCommit, issueCommit);
+        givenCommits(nextIterationRefChange,
+                givenCommit("[maven-release-plugin] prepare for next development iteration", START_OF_2016),
+                releaseCommit,
+                issueCommit);
+        givenJiraVersionDoesNotExist();
+        givenCreatedVersion("1", "1.0.0", "TEST");
+
+        whenPostReceive(latestRefChange);
+        whenPostReceive(nextIterationRefChange);
+
+        then(jiraService).should(timeout(5000)).addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("TEST")), eq(Collections.singletonList(new IssueKey(new ProjectKey("TEST"), new IssueId("1")))), any());
+        then(jiraService).should().createJiraVersion(unreleasedSerializedVersion("1.0.0", "TEST"));
+        thenGetCommits(never(), nextIterationRefChange);
+        debouncingHookJobExecutor.onStop();
+    }
+
+    @Test
+    public void shouldLookUpTipOfRefStatePushedAgainWithinDebounceWindowOnce() throws IOException, CredentialsRequiredException, ResponseException {
+
+        HookJobExecutor debouncingHookJobExecutor = new HookJobExecutor(Runnable::run, 10, Duration.ZERO, Duration.ofSeconds(1));
+        jiraVersionGeneratorHook = createHook(debouncingHookJobExecutor);
+        givenRepositoryName("test-project");
+        givenSetting("jira-project-key", "TEST");
+        givenCommits(latestRefChange,
+                givenCommit("[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016),
+                givenCommit("TEST-1", START_OF_2016));
+        givenJiraVersionDoesNotExist();
+        givenCreatedVersion("1", "1.0.0", "TEST");
+
+        whenPostReceive(latestRefChange);
+        whenPostReceive(latestRefChange);
+
+        then(jiraService).should(timeout(5000)).addVersionToIssues(eq("1.0.0"), eq(new ProjectKey("TEST")), any(), any());
+        then(commitService).should(times(1)).getCommit(refEq(new CommitRequest.Builder(repository, "latestRefChange").build()));
+        thenGetCommits(times(1), latestRefChange);
+        debouncingHookJobExecutor.onStop();
+    }
+
+    private JiraVersionGeneratorHook createHook(HookJobExecutor hookJobExecutor) {
+
+        return new JiraVersionGeneratorHook(commitService,
+                                            refService,
+                                            new ReleaseOutbox(jiraService,
+                                                              new ReleaseJournal(temporaryFolder.getRoot().toPath()),
+                                                              authenticationContext),
+                                            hookJobExecutor,
+                                            new ReleaseMarkerIndex(pluginSettingsFactory),
+                                            securityService,
+                                            authenticationContext);
     }
 
     private void givenCreatedVersion(String id, String name, String project) {
@@ -274,8 +520,14 @@ public class JiraVersionGeneratorHookTest {
 
     private void givenCommits(RefChange refChange, Commit... commits) {
 
-        CommitsBetweenRequest request = new CommitsBetweenRequest.Builder(repository).include(refChange.getToHash()).build();
+        givenCommits(refChange, Collections.emptyList(), commits);
+    }
+
+    private void givenCommits(RefChange refChange, List<String> excludedCommitIds, Commit... commits) {
+
+        CommitsBetweenRequest request = commitsBetweenRequest(refChange, excludedCommitIds);
         given(commitService.getCommitsBetween(refEq(request), any())).willReturn(new PageImpl<>(new PageRequestImpl(0, commits.length), Arrays.asList(commits), true));
+        given(commitService.getCommit(refEq(new CommitRequest.Builder(repository, refChange.getToHash()).build()))).willReturn(commits[0]);
     }
 
     private void givenRepositoryName(String value) {
@@ -283,9 +535,9 @@ public class JiraVersionGeneratorHookTest {
         given(repository.getName()).willReturn(value);
     }
 
-    private void whenPostReceive(RefChange refChange) {
+    private void whenPostReceive(RefChange... refChanges) {
 
-        given(request.getRefChanges()).willReturn(Collections.singletonList(refChange));
+        given(request.getRefChanges()).willReturn(Arrays.asList(refChanges));
         jiraVersionGeneratorHook.postUpdate(context, request);
     }
 
@@ -296,16 +548,33 @@ public class JiraVersionGeneratorHookTest {
 
     private void thenGetCommits(VerificationMode verificationMode, RefChange refChange) {
 
-        CommitsBetweenRequest request = new CommitsBetweenRequest.Builder(repository)
-                .include(refChange.getToHash())
-                .build();
+        thenGetCommits(verificationMode, refChange, Collections.emptyList());
+    }
 
-        then(commitService).should(verificationMode).getCommitsBetween(refEq(request),
+    private void thenGetCommits(VerificationMode verificationMode, RefChange refChange, List<String> excludedCommitIds) {
+
+        then(commitService).should(verificationMode).getCommitsBetween(refEq(commitsBetweenRequest(refChange, excludedCommitIds)),
                 any(PageRequest.class));
     }
 
+    private CommitsBetweenRequest commitsBetweenRequest(RefChange refChange, List<String> excludedCommitIds) {
+
+        CommitsBetweenRequest.Builder builder = new CommitsBetweenRequest.Builder(repository)
+                .include(refChange.getToHash());
+
+        if (!excludedCommitIds.isEmpty()) {
+            builder.exclude(excludedCommitIds);
+        }
+
+        return builder.build();
+    }
+
     Commit givenCommit(String message, LocalDate authorTimestamp) {
-        return new SimpleCommit.Builder("id")
+        return givenCommit("id", message, authorTimestamp);
+    }
+
+    Commit givenCommit(String id, String message, LocalDate authorTimestamp) {
+        return new SimpleCommit.Builder(id)
                 .author(new TestApplicationUser(""))
                 .message(message)
                 .authorTimestamp(Date.from(authorTimestamp.atStartOfDay().toInstant(ZoneOffset.UTC)))
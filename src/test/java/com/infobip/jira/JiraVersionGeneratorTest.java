@@ -16,13 +16,16 @@
 package com.infobip.jira;
 
 import com.atlassian.applinks.api.CredentialsRequiredException;
+import com.atlassian.bitbucket.auth.AuthenticationContext;
 import com.atlassian.bitbucket.commit.Commit;
 import com.atlassian.bitbucket.commit.SimpleCommit;
 import com.atlassian.bitbucket.user.TestApplicationUser;
 import com.atlassian.sal.api.net.ResponseException;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -35,17 +38,25 @@ import java.util.*;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 
 @RunWith(MockitoJUnitRunner.class)
 public class JiraVersionGeneratorTest {
 
     private static final LocalDate START_OF_2016 = LocalDate.of(2016, 1, 1);
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private JiraVersionGenerator jiraVersionGenerator;
 
     @Mock
     private JiraService jiraService;
 
+    @Mock
+    private AuthenticationContext authenticationContext;
+
     @Mock
     private Iterator<Commit> commitIterator;
 
@@ -55,6 +66,8 @@ public class JiraVersionGeneratorTest {
     @Before
     public void setUp() throws Exception {
         given(clock.getZone()).willReturn(ZoneOffset.UTC);
+        given(jiraService.addVersionToIssues(any(), any(), any(), any())).willReturn(
+                new IssueUpdateResult(Collections.emptyList(), Collections.emptyList(), Collections.emptyMap(), Duration.ZERO));
     }
 
     @Test
@@ -108,9 +121,33 @@ public class JiraVersionGeneratorTest {
 
         jiraVersionGenerator.generate("", new ProjectKey("TEST"));
 
-        then(jiraService).should().addVersionToIssues("1.0.1",
-                new ProjectKey("TEST"),
-                ImmutableList.of(new IssueKey(new ProjectKey("TEST"), new IssueId("1"))));
+        then(jiraService).should().addVersionToIssues(eq("1.0.1"),
+                eq(new ProjectKey("TEST")),
+                eq(ImmutableList.of(new IssueKey(new ProjectKey("TEST"), new IssueId("1")))),
+                any());
+    }
+
+    @Test
+    public void shouldLinkEachIssueToVersionOnce() throws IOException, CredentialsRequiredException, ResponseException {
+
+        givenJiraVersionGeneratorWithReleaseCommit(givenCommit(
+                "1", "[maven-release-plugin] prepare release test-project-1.0.1", START_OF_2016));
+        given(commitIterator.hasNext()).willReturn(true, true, true, true, false);
+        given(commitIterator.next())
+                .willReturn(givenCommit("2", "TEST-2 fixed again, see TEST-1", START_OF_2016),
+                        givenCommit("3", "TEST-1 TEST-2", START_OF_2016),
+                        givenCommit("4", "TEST-1", START_OF_2016),
+                        givenCommit("5", "[maven-release-plugin] prepare release test-project-1.0.0", START_OF_2016));
+        given(jiraService.findVersion(any(), any())).willReturn(Optional.empty());
+        given(jiraService.createJiraVersion(any())).willReturn(new SerializedVersion(null, "1.0.1", "TEST", null, null));
+
+        jiraVersionGenerator.generate("", new ProjectKey("TEST"));
+
+        then(jiraService).should().addVersionToIssues(eq("1.0.1"),
+                eq(new ProjectKey("TEST")),
+                eq(ImmutableList.of(new IssueKey(new ProjectKey("TEST"), new IssueId("2")),
+                        new IssueKey(new ProjectKey("TEST"), new IssueId("1")))),
+                any());
     }
 
     @Test
@@ -130,12 +167,30 @@ public class JiraVersionGeneratorTest {
         then(jiraService).should().releaseVersion(new SerializedVersion(null, "1.0.1", "TEST", null, null), LocalDate.of(2016, 1, 1));
     }
 
+    @Test
+    public void shouldReleaseVersionWithoutIssuesIfThereAreNoCommitsSincePreviousRelease() {
+
+        givenJiraVersionGeneratorWithReleaseCommit(givenCommit("1", "[maven-release-plugin] prepare release test-project-1.0.1", START_OF_2016));
+        given(commitIterator.hasNext()).willReturn(false);
+        given(jiraService.findVersion(any(), any())).willReturn(Optional.empty());
+        given(jiraService.createJiraVersion(any())).willReturn(new SerializedVersion(null, "1.0.1", "TEST", null, null));
+
+        jiraVersionGenerator.generate("", new ProjectKey("TEST"));
+
+        then(jiraService).should().createJiraVersion(new SerializedVersion(null, "1.0.1", "TEST", null, false));
+        then(jiraService).should().releaseVersion(new SerializedVersion(null, "1.0.1", "TEST", null, null), LocalDate.of(2016, 1, 1));
+        then(jiraService).should(never()).addVersionToIssues(any(), any(), any(), any());
+    }
+
     private void givenJiraVersionGeneratorWithReleaseCommit(Commit commit) {
 
-        jiraVersionGenerator = new JiraVersionGenerator(jiraService,
+        ReleaseOutbox releaseOutbox = new ReleaseOutbox(jiraService,
+                                                        new ReleaseJournal(temporaryFolder.getRoot().toPath()),
+                                                        authenticationContext);
+        jiraVersionGenerator = new JiraVersionGenerator(releaseOutbox,
                 commit,
                 commitIterator,
-                new CommitMessageVersionExtractor("test-project"), clock);
+                new CommitMessageVersionExtractor("test-project"), clock, Runnable::run);
     }
 
     private Commit givenCommit(String id, String message, LocalDate authorTimestamp) {
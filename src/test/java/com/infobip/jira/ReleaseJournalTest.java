@@ -0,0 +1,173 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class ReleaseJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldKeepPlanPendingUntilReleasedAndAllIssuesAreLinked() {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1", "TEST-2"));
+
+        releaseJournal.markIssuesLinked("1", Collections.singletonList("TEST-1"));
+        releaseJournal.markReleased("1");
+
+        then(releaseJournal.get("1").map(ReleaseJournal.PendingRelease::getRemainingIssueKeys))
+                .contains(Collections.singletonList("TEST-2"));
+
+        releaseJournal.markIssuesLinked("1", Collections.singletonList("TEST-2"));
+
+        then(releaseJournal.getPending()).isEmpty();
+    }
+
+    @Test
+    public void shouldRestorePendingPlansFromFile() {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1", "TEST-2"));
+        releaseJournal.append(givenPlan("2", "TEST-3"));
+        releaseJournal.markIssuesLinked("1", Collections.singletonList("TEST-1"));
+        releaseJournal.markIssuesLinked("2", Collections.singletonList("TEST-3"));
+        releaseJournal.markReleased("2");
+
+        List<ReleaseJournal.PendingRelease> actual = givenReleaseJournal().getPending();
+
+        then(actual).hasSize(1);
+        then(actual.get(0).getPlan()).isEqualTo(givenPlan("1", "TEST-1", "TEST-2"));
+        then(actual.get(0).getRemainingIssueKeys()).containsExactly("TEST-2");
+        then(actual.get(0).isReleased()).isFalse();
+    }
+
+    @Test
+    public void shouldNotRestoreAbandonedPlans() {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1"));
+        releaseJournal.append(givenPlan("2", "TEST-2"));
+
+        releaseJournal.markAbandoned("1");
+
+        then(givenReleaseJournal().getPending()).hasSize(1);
+    }
+
+    @Test
+    public void shouldIgnoreIncompleteLastLine() throws IOException {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1"));
+        Files.write(getJournalFile(), "{\"type\":\"RELEASED\",\"pla".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+        List<ReleaseJournal.PendingRelease> actual = givenReleaseJournal().getPending();
+
+        then(actual).hasSize(1);
+        then(actual.get(0).isReleased()).isFalse();
+    }
+
+    @Test
+    public void shouldCompactFileOnLoad() throws IOException {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1"));
+        releaseJournal.append(givenPlan("2", "TEST-2"));
+        releaseJournal.markAbandoned("2");
+
+        givenReleaseJournal().getPending();
+
+        then(Files.readAllLines(getJournalFile())).hasSize(1);
+    }
+
+    @Test
+    public void shouldTruncateFileWhenNoPlanIsPending() throws IOException {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1"));
+        releaseJournal.markIssuesLinked("1", Collections.singletonList("TEST-1"));
+
+        releaseJournal.markReleased("1");
+
+        then(Files.size(getJournalFile())).isZero();
+    }
+
+    @Test
+    public void shouldNotRestoreDroppedIssues() {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1", "TEST-2", "TEST-3"));
+        releaseJournal.markIssuesLinked("1", Collections.singletonList("TEST-1"));
+        releaseJournal.markIssuesDropped("1", Collections.singletonList("TEST-2"));
+
+        List<ReleaseJournal.PendingRelease> actual = givenReleaseJournal().getPending();
+
+        then(actual).hasSize(1);
+        then(actual.get(0).getRemainingIssueKeys()).containsExactly("TEST-3");
+    }
+
+    @Test
+    public void shouldCompactFileWhilePlansArePending() throws IOException {
+
+        ReleaseJournal releaseJournal = givenReleaseJournal();
+        releaseJournal.append(givenPlan("1", "TEST-1", "TEST-2", "TEST-3"));
+        releaseJournal.append(givenPlan("2", "TEST-4"));
+        releaseJournal.markIssuesLinked("1", Collections.singletonList("TEST-1"));
+        releaseJournal.markIssuesLinked("1", Collections.singletonList("TEST-2"));
+        releaseJournal.markIssuesLinked("2", Collections.singletonList("TEST-4"));
+        releaseJournal.markReleased("2");
+
+        releaseJournal.compact();
+
+        then(Files.readAllLines(getJournalFile())).hasSize(2);
+        then(givenReleaseJournal().getPending().get(0).getRemainingIssueKeys()).containsExactly("TEST-3");
+    }
+
+    private ReleaseJournal givenReleaseJournal() {
+
+        return new ReleaseJournal(temporaryFolder.getRoot().toPath());
+    }
+
+    private Path getJournalFile() {
+
+        return temporaryFolder.getRoot().toPath().resolve("release-journal.jsonl");
+    }
+
+    private ReleasePlan givenPlan(String id, String... issueKeys) {
+
+        return new ReleasePlan(id,
+                               Instant.parse("2016-01-01T00:00:00Z"),
+                               1,
+                               "TEST",
+                               "1.0.0",
+                               LocalDate.of(2016, 1, 1),
+                               Arrays.asList(issueKeys));
+    }
+}
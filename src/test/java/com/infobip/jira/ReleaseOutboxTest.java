@@ -0,0 +1,195 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.atlassian.bitbucket.auth.AuthenticationContext;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.*;
+import java.util.*;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseOutboxTest {
+
+    private static final Instant START_OF_2016 = Instant.parse("2016-01-01T00:00:00Z");
+
+    private static final ProjectKey PROJECT_KEY = new ProjectKey("TEST");
+    private static final IssueKey FIRST_ISSUE = new IssueKey(PROJECT_KEY, new IssueId("1"));
+    private static final IssueKey SECOND_ISSUE = new IssueKey(PROJECT_KEY, new IssueId("2"));
+    private static final SerializedVersion VERSION = new SerializedVersion("1", "1.0.0", "TEST", null, false);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private JiraService jiraService;
+
+    @Mock
+    private AuthenticationContext authenticationContext;
+
+    @Mock
+    private ApplicationUser user;
+
+    private ReleaseJournal releaseJournal;
+
+    @Before
+    public void setUp() {
+
+        releaseJournal = new ReleaseJournal(temporaryFolder.getRoot().toPath());
+        given(jiraService.isAvailable()).willReturn(true);
+        given(jiraService.findVersion(any(), any())).willReturn(Optional.of(VERSION));
+        given(user.getId()).willReturn(7);
+        given(authenticationContext.getCurrentUser()).willReturn(user);
+    }
+
+    @Test
+    public void shouldKeepPlanPendingIfJiraFails() {
+
+        given(jiraService.findVersion(any(), any())).willThrow(new JiraServiceException("JIRA is unavailable", true));
+
+        whenSubmit(START_OF_2016, FIRST_ISSUE);
+
+        then(releaseJournal.getPending()).hasSize(1);
+    }
+
+    @Test
+    public void shouldLinkOnlyRemainingIssuesOnDrain() {
+
+        given(jiraService.addVersionToIssues(any(), any(), any(), any()))
+                .willReturn(givenResult(Collections.singletonList(FIRST_ISSUE), true, SECOND_ISSUE))
+                .willReturn(givenResult(Collections.singletonList(SECOND_ISSUE), true));
+        whenSubmit(START_OF_2016, FIRST_ISSUE, SECOND_ISSUE);
+
+        int actual = givenReleaseOutbox(START_OF_2016).drain(10, (userId, runnable) -> runnable.run());
+
+        then(actual).isEqualTo(1);
+        then(releaseJournal.getPending()).isEmpty();
+        BDDMockito.then(jiraService).should()
+                  .addVersionToIssues(eq("1.0.0"), eq(PROJECT_KEY), eq(Collections.singletonList(SECOND_ISSUE)), any());
+        BDDMockito.then(jiraService).should(times(1)).releaseVersion(VERSION, LocalDate.of(2016, 1, 1));
+    }
+
+    @Test
+    public void shouldRunPendingPlanAsUserWhoPushedRelease() {
+
+        given(jiraService.findVersion(any(), any())).willThrow(new JiraServiceException("JIRA is unavailable", true));
+        whenSubmit(START_OF_2016, FIRST_ISSUE);
+        List<Integer> userIds = new ArrayList<>();
+
+        givenReleaseOutbox(START_OF_2016).drain(10, (userId, runnable) -> userIds.add(userId));
+
+        then(userIds).containsExactly(7);
+    }
+
+    @Test
+    public void shouldNotDrainWhileJiraIsUnavailable() {
+
+        given(jiraService.findVersion(any(), any())).willThrow(new JiraServiceException("JIRA is unavailable", true));
+        whenSubmit(START_OF_2016, FIRST_ISSUE);
+        given(jiraService.isAvailable()).willReturn(false);
+
+        int actual = givenReleaseOutbox(START_OF_2016).drain(10, (userId, runnable) -> runnable.run());
+
+        then(actual).isEqualTo(0);
+        BDDMockito.then(jiraService).should(times(1)).findVersion(any(), any());
+    }
+
+    @Test
+    public void shouldAbandonPlanAfterMaximumAge() {
+
+        given(jiraService.findVersion(any(), any())).willThrow(new JiraServiceException("JIRA is unavailable", true));
+        whenSubmit(START_OF_2016, FIRST_ISSUE);
+
+        int actual = givenReleaseOutbox(START_OF_2016.plus(Duration.ofDays(8)))
+                .drain(10, (userId, runnable) -> runnable.run());
+
+        then(actual).isEqualTo(0);
+        then(releaseJournal.getPending()).isEmpty();
+        BDDMockito.then(jiraService).should(never()).releaseVersion(any(), any());
+    }
+
+    @Test
+    public void shouldDropIssuesThatFailPermanently() {
+
+        given(jiraService.addVersionToIssues(any(), any(), any(), any()))
+                .willReturn(givenResult(Collections.singletonList(FIRST_ISSUE), false, SECOND_ISSUE));
+
+        whenSubmit(START_OF_2016, FIRST_ISSUE, SECOND_ISSUE);
+
+        then(releaseJournal.getPending()).isEmpty();
+        BDDMockito.then(jiraService).should().releaseVersion(VERSION, LocalDate.of(2016, 1, 1));
+    }
+
+    @Test
+    public void shouldAbandonPlanIfVersionCannotBeCreated() {
+
+        given(jiraService.findVersion(any(), any())).willReturn(Optional.empty());
+        given(jiraService.createJiraVersion(any())).willThrow(new JiraServiceException("Version name is invalid"));
+
+        whenSubmit(START_OF_2016, FIRST_ISSUE);
+
+        then(releaseJournal.getPending()).isEmpty();
+        BDDMockito.then(jiraService).should(never()).addVersionToIssues(any(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldUseVersionCreatedConcurrently() {
+
+        given(jiraService.findVersion(any(), any())).willReturn(Optional.empty()).willReturn(Optional.of(VERSION));
+        given(jiraService.createJiraVersion(any())).willThrow(new JiraServiceException("Version already exists"));
+        given(jiraService.addVersionToIssues(any(), any(), any(), any()))
+                .willReturn(givenResult(Collections.singletonList(FIRST_ISSUE), false));
+
+        whenSubmit(START_OF_2016, FIRST_ISSUE);
+
+        then(releaseJournal.getPending()).isEmpty();
+        BDDMockito.then(jiraService).should().releaseVersion(VERSION, LocalDate.of(2016, 1, 1));
+    }
+
+    private void whenSubmit(Instant now, IssueKey... issueKeys) {
+
+        givenReleaseOutbox(now).submit(PROJECT_KEY, "1.0.0", LocalDate.of(2016, 1, 1), Arrays.asList(issueKeys), Runnable::run);
+    }
+
+    private ReleaseOutbox givenReleaseOutbox(Instant now) {
+
+        return new ReleaseOutbox(jiraService, releaseJournal, authenticationContext, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private IssueUpdateResult givenResult(List<IssueKey> updated, boolean temporaryFailures, IssueKey... failed) {
+
+        Map<IssueKey, JiraServiceException> failures = new HashMap<>();
+        for (IssueKey issueKey : failed) {
+            failures.put(issueKey, new JiraServiceException("Failed to update " + issueKey, temporaryFailures));
+        }
+        return new IssueUpdateResult(updated, Collections.emptyList(), failures, Duration.ZERO);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class RequiredLiteralTest {
+
+    @Test
+    public void shouldFindLiteralOfDefaultReleaseCommitPattern() {
+
+        String actual = RequiredLiteral.of(Pattern.compile(
+                "\\[maven-release-plugin\\] prepare release test-project-(?<version>.*)"));
+
+        then(actual).isEqualTo("[maven-release-plugin] prepare release test-project-");
+    }
+
+    @Test
+    public void shouldFindLongestLiteral() {
+
+        String actual = RequiredLiteral.of(Pattern.compile("^Release (?<version>\\d+\\.\\d+) of project$"));
+
+        then(actual).isEqualTo(" of project");
+    }
+
+    @Test
+    public void shouldExcludeOptionalCharacters() {
+
+        String actual = RequiredLiteral.of(Pattern.compile("Releases? (?<version>.*)"));
+
+        then(actual).isEqualTo("Release");
+    }
+
+    @Test
+    public void shouldEndLiteralAtMetaCharacters() {
+
+        then(RequiredLiteral.of(Pattern.compile("ab.cde"))).isEqualTo("cde");
+        then(RequiredLiteral.of(Pattern.compile("abc[de]f"))).isEqualTo("abc");
+        then(RequiredLiteral.of(Pattern.compile("abc\\sde"))).isEqualTo("abc");
+        then(RequiredLiteral.of(Pattern.compile("abcd{2}ef"))).isEqualTo("abc");
+        then(RequiredLiteral.of(Pattern.compile("a+bcd"))).isEqualTo("bcd");
+    }
+
+    @Test
+    public void shouldIgnoreGroups() {
+
+        String actual = RequiredLiteral.of(Pattern.compile("rel(ease of project)?(?<version>.*)"));
+
+        then(actual).isEqualTo("rel");
+    }
+
+    @Test
+    public void shouldReadQuotedLiteral() {
+
+        String actual = RequiredLiteral.of(Pattern.compile("\\Qv1.[x]\\E(?<version>.*)"));
+
+        then(actual).isEqualTo("v1.[x]");
+    }
+
+    @Test
+    public void shouldSkipArgumentsOfCharacterEscapes() {
+
+        then(RequiredLiteral.of(Pattern.compile("Rel\\u0065aseXYZ(?<version>.*)"))).isEqualTo("aseXYZ");
+        then(RequiredLiteral.of(Pattern.compile("R\\x65leaseXY(?<version>.*)"))).isEqualTo("leaseXY");
+        then(RequiredLiteral.of(Pattern.compile("R\\x{65}leaseXY(?<version>.*)"))).isEqualTo("leaseXY");
+        then(RequiredLiteral.of(Pattern.compile("R\\0145leaseZZ (?<version>.*)"))).isEqualTo("leaseZZ ");
+        then(RequiredLiteral.of(Pattern.compile("R\\cMleaseZZ(?<version>.*)"))).isEqualTo("leaseZZ");
+    }
+
+    @Test
+    public void shouldSkipArgumentsOfClassAndReferenceEscapes() {
+
+        then(RequiredLiteral.of(Pattern.compile("ab\\pLcdef"))).isEqualTo("cdef");
+        then(RequiredLiteral.of(Pattern.compile("ab\\p{Lu}cdef"))).isEqualTo("cdef");
+        then(RequiredLiteral.of(Pattern.compile("(a)b\\1cdef"))).isEqualTo("cdef");
+        then(RequiredLiteral.of(Pattern.compile("(?<x>a)b\\k<x>cdef"))).isEqualTo("cdef");
+    }
+
+    @Test
+    public void shouldNotFindLiteralOfAlternation() {
+
+        String actual = RequiredLiteral.of(Pattern.compile("Release (?<version>.*)|Hotfix"));
+
+        then(actual).isEmpty();
+    }
+
+    @Test
+    public void shouldNotFindLiteralWhenPatternHasFlags() {
+
+        then(RequiredLiteral.of(Pattern.compile("(?i)Release (?<version>.*)"))).isEmpty();
+        then(RequiredLiteral.of(Pattern.compile("Release (?<version>.*)", Pattern.CASE_INSENSITIVE))).isEmpty();
+    }
+}
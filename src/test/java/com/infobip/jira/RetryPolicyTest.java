@@ -0,0 +1,136 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.atlassian.sal.api.net.*;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.*;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.BDDMockito.given;
+
+public class RetryPolicyTest {
+
+    private final List<Duration> sleeps = new ArrayList<>();
+    private final long[] nanoTime = {0};
+    private final Clock clock = Clock.fixed(Instant.parse("2016-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    private final RetryPolicy retryPolicy = new RetryPolicy(4,
+                                                            Duration.ofMillis(100),
+                                                            Duration.ofMillis(1000),
+                                                            Duration.ofSeconds(10),
+                                                            this::sleep,
+                                                            () -> nanoTime[0],
+                                                            clock);
+
+    @Test
+    public void shouldRetryTransportErrorsWithGrowingBackoff() throws Exception {
+
+        Deque<ResponseException> failures = new ArrayDeque<>(Arrays.asList(givenTransportFailure(),
+                                                                           givenTransportFailure(),
+                                                                           givenTransportFailure()));
+
+        String actual = retryPolicy.execute("GET /", () -> {
+            if (!failures.isEmpty()) {
+                throw failures.pop();
+            }
+            return "ok";
+        });
+
+        then(actual).isEqualTo("ok");
+        then(sleeps).hasSize(3);
+        then(sleeps.get(0).toMillis()).isGreaterThanOrEqualTo(50).isLessThanOrEqualTo(100);
+        then(sleeps.get(1).toMillis()).isGreaterThanOrEqualTo(100).isLessThanOrEqualTo(200);
+        then(sleeps.get(2).toMillis()).isGreaterThanOrEqualTo(200).isLessThanOrEqualTo(400);
+        then(retryPolicy.getRetryCount()).isEqualTo(3L);
+    }
+
+    @Test
+    public void shouldHonorRetryAfterSeconds() throws Exception {
+
+        ResponseException tooManyRequests = givenStatusFailure(429, "3");
+
+        Throwable thrown = catchThrowable(() -> retryPolicy.execute("GET /", () -> {
+            throw tooManyRequests;
+        }));
+
+        then(thrown).isSameAs(tooManyRequests);
+        then(sleeps).containsExactly(Duration.ofSeconds(3), Duration.ofSeconds(3), Duration.ofSeconds(3));
+        then(retryPolicy.getExhaustedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldHonorRetryAfterDate() throws Exception {
+
+        ResponseException unavailable = givenStatusFailure(503, "Fri, 01 Jan 2016 00:00:02 GMT");
+
+        catchThrowable(() -> retryPolicy.execute("GET /", () -> {
+            throw unavailable;
+        }));
+
+        then(sleeps).contains(Duration.ofSeconds(2));
+    }
+
+    @Test
+    public void shouldNotRetryBeyondBudget() throws Exception {
+
+        ResponseException unavailable = givenStatusFailure(503, "4");
+
+        Throwable thrown = catchThrowable(() -> retryPolicy.execute("GET /", () -> {
+            throw unavailable;
+        }));
+
+        then(thrown).isSameAs(unavailable);
+        then(sleeps).containsExactly(Duration.ofSeconds(4), Duration.ofSeconds(4));
+    }
+
+    @Test
+    public void shouldNotRetryClientErrors() throws Exception {
+
+        ResponseException notFound = givenStatusFailure(404, null);
+
+        Throwable thrown = catchThrowable(() -> retryPolicy.execute("GET /", () -> {
+            throw notFound;
+        }));
+
+        then(thrown).isSameAs(notFound);
+        then(sleeps).isEmpty();
+    }
+
+    private void sleep(Duration duration) {
+
+        sleeps.add(duration);
+        nanoTime[0] += duration.toNanos();
+    }
+
+    private ResponseException givenTransportFailure() {
+
+        return new ResponseTransportException(new IOException("Connection reset"));
+    }
+
+    private ResponseException givenStatusFailure(int statusCode, String retryAfter) {
+
+        Response response = Mockito.mock(Response.class);
+        given(response.getStatusCode()).willReturn(statusCode);
+        given(response.getHeader("Retry-After")).willReturn(retryAfter);
+        return new ResponseStatusException("Status " + statusCode, response);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *# Copyright 2016 Infobip
+ #
+ # Licensed under the Apache License, Version 2.0 (the "License");
+ # you may not use this file except in compliance with the License.
+ # You may obtain a copy of the License at
+ #
+ # http://www.apache.org/licenses/LICENSE-2.0
+ #
+ # Unless required by applicable law or agreed to in writing, software
+ # distributed under the License is distributed on an "AS IS" BASIS,
+ # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ # See the License for the specific language governing permissions and
+ # limitations under the License.
+ */
+package com.infobip.jira;
+
+import com.infobip.infrastructure.ObjectMapperFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class VersionListReaderTest {
+
+    private static final String VERSIONS = "[\n" +
+            "    {\n" +
+            "        \"self\": \"https://jira.infobip.com/rest/api/2/version/11779\",\n" +
+            "        \"id\": \"11779\",\n" +
+            "        \"description\": \"first release\",\n" +
+            "        \"name\": \"1.0.0\",\n" +
+            "        \"archived\": false,\n" +
+            "        \"released\": true,\n" +
+            "        \"releaseDate\": \"2014-01-03\",\n" +
+            "        \"projectId\": 10901\n" +
+            "    },\n" +
+            "    {\n" +
+            "        \"id\": \"11780\",\n" +
+            "        \"extra\": {\"nested\": [{\"name\": \"1.0.0\"}]},\n" +
+            "        \"name\": \"2.0.0\",\n" +
+            "        \"released\": true,\n" +
+            "        \"releaseDate\": \"2014-03-03\"\n" +
+            "    },\n" +
+            "    {\n" +
+            "        \"id\": \"11781\",\n" +
+            "        \"name\": \"2.0.1\",\n" +
+            "        \"released\": false\n" +
+            "    }\n" +
+            "]";
+
+    private final VersionListReader versionListReader = new VersionListReader(
+            ObjectMapperFactory.getInstance().getFactory());
+
+    @Test
+    public void shouldFindVersionAndStopReading() throws IOException {
+
+        VersionListReader.Result actual = versionListReader.find(new ByteArrayInputStream(VERSIONS.getBytes(StandardCharsets.UTF_8)), "2.0.0");
+
+        then(actual.getVersion()).contains(new SerializedVersion("11780", "2.0.0", null, LocalDate.of(2014, 3, 3), true));
+        then(actual.getNames()).isEmpty();
+    }
+
+    @Test
+    public void shouldReturnAllNamesOfMissingVersion() throws IOException {
+
+        VersionListReader.Result actual = versionListReader.find(new ByteArrayInputStream(VERSIONS.getBytes(StandardCharsets.UTF_8)), "3.0.0");
+
+        then(actual.getVersion()).isEmpty();
+        then(actual.getNames().get()).containsOnly("1.0.0", "2.0.0", "2.0.1");
+    }
+
+    @Test
+    public void shouldFindVersionWithoutReleaseDate() throws IOException {
+
+        VersionListReader.Result actual = versionListReader.find(new ByteArrayInputStream(VERSIONS.getBytes(StandardCharsets.UTF_8)), "2.0.1");
+
+        then(actual.getVersion()).contains(new SerializedVersion("11781", "2.0.1", null, null, false));
+    }
+}